@@ -0,0 +1,37 @@
+package com.example.garbageclassifier;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+
+//Remembers the tuned inference backend per device and model in SharedPreferences
+public class BackendPreferences implements BackendTuner.Store {
+
+    private static final String PREFERENCES_NAME = "inference_backend";
+
+    private final SharedPreferences preferences;
+
+    public BackendPreferences(Context context) {
+        preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    //a system update or another model can change which backend wins, so both are part of the key
+    public static String deviceKey(String modelFile) {
+        return Build.MANUFACTURER + "/" + Build.MODEL + "/" + Build.VERSION.SDK_INT + "/" + modelFile;
+    }
+
+    @Override
+    public String load(String deviceKey) {
+        return preferences.getString(deviceKey, null);
+    }
+
+    @Override
+    public void save(String deviceKey, String backendKey) {
+        preferences.edit().putString(deviceKey, backendKey).apply();
+    }
+
+    @Override
+    public void clear(String deviceKey) {
+        preferences.edit().remove(deviceKey).apply();
+    }
+}
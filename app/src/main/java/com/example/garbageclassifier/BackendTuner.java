@@ -0,0 +1,82 @@
+package com.example.garbageclassifier;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//Times a few warm invokes per backend on first run and remembers the fastest one per device.
+//Backends that fail to initialize are skipped, and CPU is the answer when nothing else works.
+public class BackendTuner {
+
+    public interface Benchmark {
+        //nanoseconds per warm invoke, throws when the backend cannot be initialized
+        long measureNanos(InferenceBackend backend) throws Exception;
+    }
+
+    public interface Store {
+        String load(String deviceKey);
+
+        void save(String deviceKey, String backendKey);
+
+        void clear(String deviceKey);
+    }
+
+    private final Benchmark benchmark;
+    private final Store store;
+    private final String deviceKey;
+    private final Map<InferenceBackend, Long> measurements = new LinkedHashMap<>();
+    private final Map<InferenceBackend, Exception> failures = new LinkedHashMap<>();
+
+    public BackendTuner(Benchmark benchmark, Store store, String deviceKey) {
+        this.benchmark = benchmark;
+        this.store = store;
+        this.deviceKey = deviceKey;
+    }
+
+    //returns the stored choice if there is one, otherwise tunes and stores the result
+    public InferenceBackend select(List<InferenceBackend> candidates) {
+        InferenceBackend stored = InferenceBackend.fromKey(store.load(deviceKey));
+        if (stored != null)
+            return stored;
+        InferenceBackend best = tune(candidates);
+        store.save(deviceKey, best.toKey());
+        return best;
+    }
+
+    public InferenceBackend tune(List<InferenceBackend> candidates) {
+        measurements.clear();
+        failures.clear();
+        InferenceBackend best = null;
+        long bestNanos = Long.MAX_VALUE;
+        for (InferenceBackend candidate : candidates) {
+            long nanos;
+            try {
+                nanos = benchmark.measureNanos(candidate);
+            } catch (Exception e) {
+                failures.put(candidate, e);
+                continue;
+            }
+            measurements.put(candidate, nanos);
+            if (nanos < bestNanos) {
+                bestNanos = nanos;
+                best = candidate;
+            }
+        }
+        return best != null ? best : InferenceBackend.DEFAULT;
+    }
+
+    //forget the stored choice, e.g. after it failed to initialize, so the next start tunes again
+    public void invalidate() {
+        store.clear(deviceKey);
+    }
+
+    //timings of the last tune() run, backends that failed are missing
+    public Map<InferenceBackend, Long> getMeasurements() {
+        return measurements;
+    }
+
+    //backends that could not be initialized in the last tune() run, with the reason
+    public Map<InferenceBackend, Exception> getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.garbageclassifier;
+
+//Standard padded Base64 without line breaks, appended to a caller-owned StringBuilder so
+//the builder's storage can be reused from one request to the next
+public final class Base64Writer {
+
+    private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private Base64Writer() {
+    }
+
+    public static int encodedLength(int byteCount) {
+        return (byteCount + 2) / 3 * 4;
+    }
+
+    public static void append(byte[] bytes, int offset, int length, StringBuilder out) {
+        out.ensureCapacity(out.length() + encodedLength(length));
+        int end = offset + length;
+        int i = offset;
+        for (; i + 2 < end; i += 3) {
+            int group = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8 | (bytes[i + 2] & 0xFF);
+            out.append(ALPHABET[group >>> 18])
+                    .append(ALPHABET[(group >>> 12) & 0x3F])
+                    .append(ALPHABET[(group >>> 6) & 0x3F])
+                    .append(ALPHABET[group & 0x3F]);
+        }
+        int remaining = end - i;
+        if (remaining == 1) {
+            int group = (bytes[i] & 0xFF) << 16;
+            out.append(ALPHABET[group >>> 18]).append(ALPHABET[(group >>> 12) & 0x3F]).append("==");
+        } else if (remaining == 2) {
+            int group = (bytes[i] & 0xFF) << 16 | (bytes[i + 1] & 0xFF) << 8;
+            out.append(ALPHABET[group >>> 18]).append(ALPHABET[(group >>> 12) & 0x3F]).append(ALPHABET[(group >>> 6) & 0x3F]).append('=');
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.garbageclassifier;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+//Decodes camera and gallery images just above the model input size instead of at full resolution.
+//Bounds are read first, inSampleSize is picked from them and the pixels land in a pooled inBitmap.
+//BitmapFactory is used rather than ImageDecoder because only it can decode into a reused bitmap.
+public class BitmapDecoder {
+
+    private static final String TAG = "BitmapDecoder";
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int targetSize;
+    private final BitmapPool pool;
+    private long lastDecodedBytes, peakDecodedBytes, lastFullSizeBytes;
+
+    //targetSize is the shortest side the classifier needs, e.g. 224
+    public BitmapDecoder(int targetSize, BitmapPool pool) {
+        this.targetSize = targetSize;
+        this.pool = pool;
+    }
+
+    public Bitmap decode(ContentResolver resolver, Uri uri) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream bounds = resolver.openInputStream(uri);
+        try {
+            BitmapFactory.decodeStream(bounds, null, options);
+        } finally {
+            bounds.close();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Cannot read image bounds of " + uri);
+
+        int sampleSize = computeSampleSize(options.outWidth, options.outHeight, targetSize);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = pool.take(width * height * BYTES_PER_PIXEL);
+
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStream(resolver, uri, options);
+        } catch (IllegalArgumentException e) {
+            //the pooled bitmap did not fit after all, decode into a fresh one
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = decodeStream(resolver, uri, options);
+        }
+        if (bitmap == null)
+            throw new IOException("Cannot decode " + uri);
+
+        record(options.outWidth, options.outHeight, sampleSize, bitmap);
+        return bitmap;
+    }
+
+    //an encoded image already in memory, e.g. a JPEG from an in-app capture
+    public Bitmap decode(byte[] data, int length) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Cannot read image bounds of " + length + " bytes");
+
+        int sampleSize = computeSampleSize(options.outWidth, options.outHeight, targetSize);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = pool.take(width * height * BYTES_PER_PIXEL);
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+        } catch (IllegalArgumentException e) {
+            //the pooled bitmap did not fit after all, decode into a fresh one
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+        }
+        if (bitmap == null)
+            throw new IOException("Cannot decode " + length + " bytes");
+
+        record(options.outWidth, options.outHeight, sampleSize, bitmap);
+        return bitmap;
+    }
+
+    private static Bitmap decodeStream(ContentResolver resolver, Uri uri, BitmapFactory.Options options) throws IOException {
+        InputStream stream = resolver.openInputStream(uri);
+        try {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            stream.close();
+        }
+    }
+
+    //the EXIF orientation of the image, read from its header only; the pixels are decoded as stored
+    //and the orientation is applied while preprocessing. Upright if the image has no usable tag.
+    public static ImageOrientation readOrientation(ContentResolver resolver, Uri uri) {
+        try {
+            InputStream stream = resolver.openInputStream(uri);
+            if (stream == null)
+                return ImageOrientation.NORMAL;
+            try {
+                return ImageOrientation.fromExif(new ExifInterface(stream).getAttributeInt(
+                        ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL));
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "No EXIF orientation for " + uri + ": " + e);
+            return ImageOrientation.NORMAL;
+        }
+    }
+
+    //largest power of two that keeps the shortest side at or above targetSize
+    public static int computeSampleSize(int width, int height, int targetSize) {
+        int shortest = Math.min(width, height);
+        int sampleSize = 1;
+        while (shortest / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private synchronized void record(int fullWidth, int fullHeight, int sampleSize, Bitmap bitmap) {
+        lastDecodedBytes = bitmap.getAllocationByteCount();
+        lastFullSizeBytes = (long) fullWidth * fullHeight * BYTES_PER_PIXEL;
+        peakDecodedBytes = Math.max(peakDecodedBytes, lastDecodedBytes);
+        Log.d(TAG, "Decoded " + fullWidth + "x" + fullHeight + " at 1/" + sampleSize + " into "
+                + bitmap.getWidth() + "x" + bitmap.getHeight() + ": " + lastDecodedBytes / 1024 + " KB instead of "
+                + lastFullSizeBytes / 1024 + " KB, peak " + peakDecodedBytes / 1024 + " KB");
+    }
+
+    //bitmap memory of the last decode, which is the peak per classification for the decode stage
+    public synchronized long getLastDecodedBytes() {
+        return lastDecodedBytes;
+    }
+
+    //what the same image would have cost at full resolution
+    public synchronized long getLastFullSizeBytes() {
+        return lastFullSizeBytes;
+    }
+
+    public synchronized long getPeakDecodedBytes() {
+        return peakDecodedBytes;
+    }
+}
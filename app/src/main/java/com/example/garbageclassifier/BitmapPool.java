@@ -0,0 +1,44 @@
+package com.example.garbageclassifier;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//A few mutable bitmaps kept around to be decoded into again through inBitmap
+public class BitmapPool {
+
+    private final int maxSize;
+    private final List<Bitmap> bitmaps = new ArrayList<>();
+
+    public BitmapPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    //smallest pooled bitmap that can hold `bytes`, or null
+    public synchronized Bitmap take(int bytes) {
+        Bitmap best = null;
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap.getAllocationByteCount() >= bytes
+                    && (best == null || bitmap.getAllocationByteCount() < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (best != null)
+            bitmaps.remove(best);
+        return best;
+    }
+
+    //only hand back bitmaps that nothing, including views, still draws
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable() || bitmaps.contains(bitmap))
+            return;
+        if (bitmaps.size() >= maxSize)
+            bitmaps.remove(0);
+        bitmaps.add(bitmap);
+    }
+
+    public synchronized void clear() {
+        bitmaps.clear();
+    }
+}
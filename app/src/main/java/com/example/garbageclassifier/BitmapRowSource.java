@@ -0,0 +1,29 @@
+package com.example.garbageclassifier;
+
+import android.graphics.Bitmap;
+
+//Reads rows straight out of a Bitmap, one instance is reused for every call
+public class BitmapRowSource implements PixelRowSource {
+
+    private Bitmap bitmap;
+
+    public BitmapRowSource setBitmap(Bitmap bitmap) {
+        this.bitmap = bitmap;
+        return this;
+    }
+
+    @Override
+    public int getWidth() {
+        return bitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return bitmap.getHeight();
+    }
+
+    @Override
+    public void getRow(int[] dst, int x, int y, int width) {
+        bitmap.getPixels(dst, 0, width, x, y, width, 1);
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.garbageclassifier;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageCapture;
+import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.util.Log;
+import android.util.Size;
+import android.view.View;
+import android.widget.Button;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Takes photos with CameraX inside the app. The JPEG stays in memory at a resolution close to the
+//model input and goes straight to the classifier, without the system camera app and the
+//full-size file it writes and this app reads back.
+public class CaptureActivity extends AppCompatActivity {
+
+    private static final String TAG = "CaptureActivity";
+    private static final int REQUEST_CAMERA_PERMISSION = 11;
+    private static final int MODEL_INPUT_SIZE = 224;
+    //the smallest capture size most cameras offer that is still above the model input
+    private static final Size CAPTURE_SIZE = new Size(640, 480);
+
+    private PreviewView previewView;
+    private TextView predictionView;
+    private Button shutterButton;
+
+    private ClassifierHolder classifierHolder;
+    private TfliteClassifier classifier;
+    private ImageCapture imageCapture;
+    private CaptureLatency captureLatency;
+    private final ExecutorService captureExecutor = Executors.newSingleThreadExecutor();
+    private final BitmapPool bitmapPool = new BitmapPool(2);
+    private final BitmapDecoder bitmapDecoder = new BitmapDecoder(MODEL_INPUT_SIZE, bitmapPool);
+    //only touched on the capture thread, grows to the largest JPEG seen
+    private byte[] jpeg = new byte[0];
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_capture);
+
+        previewView = findViewById(R.id.capturePreview);
+        predictionView = findViewById(R.id.capturePrediction);
+        shutterButton = findViewById(R.id.shutter);
+        shutterButton.setEnabled(false);
+
+        classifierHolder = GarbageClassifierApp.getClassifierHolder(this);
+        classifierHolder.acquire();
+        classifier = new TfliteClassifier(classifierHolder);
+        captureLatency = GarbageClassifierApp.getCaptureLatency(this);
+
+        shutterButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                takePicture();
+            }
+        });
+
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED)
+            startCamera();
+        else
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode != REQUEST_CAMERA_PERMISSION)
+            return;
+        if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            startCamera();
+        } else {
+            Toast.makeText(this, "Taking photos needs the camera", Toast.LENGTH_SHORT).show();
+            finish();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        Log.d(TAG, captureLatency.toString());
+        classifier.close();
+        captureExecutor.shutdown();
+        classifierHolder.release();
+        super.onDestroy();
+    }
+
+    private void startCamera() {
+        final ListenableFuture<ProcessCameraProvider> providerFuture = ProcessCameraProvider.getInstance(this);
+        providerFuture.addListener(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    bindCamera(providerFuture.get());
+                } catch (ExecutionException | InterruptedException e) {
+                    predictionView.setText("The camera could not be opened.");
+                }
+            }
+        }, ContextCompat.getMainExecutor(this));
+    }
+
+    private void bindCamera(ProcessCameraProvider cameraProvider) {
+        if (isDestroyed())
+            return;
+        Preview preview = new Preview.Builder().build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+        imageCapture = new ImageCapture.Builder()
+                .setTargetResolution(CAPTURE_SIZE)
+                .setCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY)
+                .build();
+
+        cameraProvider.unbindAll();
+        cameraProvider.bindToLifecycle(this, CameraSelector.DEFAULT_BACK_CAMERA, preview, imageCapture);
+        shutterButton.setEnabled(true);
+    }
+
+    private void takePicture() {
+        final long shutter = System.nanoTime();
+        shutterButton.setEnabled(false);
+        predictionView.setText("Classifying...");
+        //the JPEG is handed over in memory, nothing is written to storage
+        imageCapture.takePicture(captureExecutor, new ImageCapture.OnImageCapturedCallback() {
+            @Override
+            public void onCaptureSuccess(@NonNull ImageProxy image) {
+                Bitmap bitmap;
+                ImageOrientation orientation;
+                try {
+                    ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                    int length = buffer.remaining();
+                    if (jpeg.length < length)
+                        jpeg = new byte[length];
+                    buffer.get(jpeg, 0, length);
+                    orientation = ImageOrientation.fromRotationDegrees(image.getImageInfo().getRotationDegrees());
+                    bitmap = bitmapDecoder.decode(jpeg, length);
+                } catch (IOException e) {
+                    showError("The photo could not be read.");
+                    return;
+                } finally {
+                    image.close();
+                }
+                classify(bitmap, orientation, shutter);
+            }
+
+            @Override
+            public void onError(@NonNull ImageCaptureException exception) {
+                Log.e(TAG, "Capture failed", exception);
+                showError("The photo could not be taken.");
+            }
+        });
+    }
+
+    private void classify(final Bitmap bitmap, ImageOrientation orientation, final long shutter) {
+        classifier.classify(bitmap, orientation, null).addOnCompleteListener(this, new OnCompleteListener<Classification>() {
+            @Override
+            public void onComplete(@NonNull Task<Classification> task) {
+                bitmapPool.put(bitmap);
+                shutterButton.setEnabled(true);
+                if (!task.isSuccessful()) {
+                    predictionView.setText("The classifier could not be loaded.");
+                    return;
+                }
+                Classification classification = task.getResult();
+                int category = classification.getTopCategory();
+                Recognition top = classification.getTopLabel();
+                if (category != CategoryIndex.NO_CATEGORY)
+                    predictionView.setText(CategoryIndex.nameOf(category) + " --- Confidence: " + classification.getCategoryScore(category));
+                else if (top != null)
+                    predictionView.setText(top.getName() + " --- Confidence: " + top.getConfidence());
+                else
+                    predictionView.setText("Nothing recognized.");
+                captureLatency.getInAppPath().record(System.nanoTime() - shutter);
+            }
+        });
+    }
+
+    private void showError(final String message) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                predictionView.setText(message);
+                shutterButton.setEnabled(true);
+            }
+        });
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.garbageclassifier;
+
+import java.util.Locale;
+
+//Shutter-to-label latency of the two ways a photo can be taken, so they can be compared
+public class CaptureLatency {
+
+    //system camera app: from the photo file being written to the label shown
+    private final LatencyStats intentPath = new LatencyStats(64);
+    //in-app CameraX capture: from the shutter press to the label shown
+    private final LatencyStats inAppPath = new LatencyStats(64);
+
+    public LatencyStats getIntentPath() {
+        return intentPath;
+    }
+
+    public LatencyStats getInAppPath() {
+        return inAppPath;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "CaptureLatency {intent %s, in-app %s}", intentPath, inAppPath);
+    }
+}
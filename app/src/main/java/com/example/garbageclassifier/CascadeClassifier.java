@@ -0,0 +1,164 @@
+package com.example.garbageclassifier;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Runs the tiers one after another, cheapest first, and stops at the first answer the policy
+//accepts. When no tier is sure the most confident answer is returned, so later tiers only
+//cost time and money for uncertain images.
+public class CascadeClassifier implements Classifier {
+
+    public static final String NAME = "cascade";
+
+    private final List<Classifier> tiers;
+    private final ConfidencePolicy policy;
+    private final LatencyStats latencyStats = new LatencyStats(256);
+    //per tier: requests that reached it, requests it answered confidently, time spent in it
+    private final AtomicLongArray attempts;
+    private final AtomicLongArray hits;
+    private final AtomicLongArray failures;
+    private final LatencyStats[] tierLatency;
+
+    public CascadeClassifier(List<Classifier> tiers, ConfidencePolicy policy) {
+        if (tiers.isEmpty())
+            throw new IllegalArgumentException("A cascade needs at least one tier");
+        this.tiers = new ArrayList<>(tiers);
+        this.policy = policy;
+        attempts = new AtomicLongArray(tiers.size());
+        hits = new AtomicLongArray(tiers.size());
+        failures = new AtomicLongArray(tiers.size());
+        tierLatency = new LatencyStats[tiers.size()];
+        for (int i = 0; i < tierLatency.length; i++) {
+            tierLatency[i] = new LatencyStats(256);
+        }
+    }
+
+    public CascadeClassifier(ConfidencePolicy policy, Classifier... tiers) {
+        this(Arrays.asList(tiers), policy);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    public ConfidencePolicy getPolicy() {
+        return policy;
+    }
+
+    public int getTierCount() {
+        return tiers.size();
+    }
+
+    public Classifier getTier(int tier) {
+        return tiers.get(tier);
+    }
+
+    public long getAttempts(int tier) {
+        return attempts.get(tier);
+    }
+
+    //share of all cascade requests that this tier answered confidently
+    public double getHitRate(int tier) {
+        long requests = attempts.get(0);
+        return requests == 0 ? 0 : hits.get(tier) / (double) requests;
+    }
+
+    //share of the requests reaching this tier that had to go further
+    public double getEscalationRate(int tier) {
+        long reached = attempts.get(tier);
+        return reached == 0 ? 0 : (reached - hits.get(tier)) / (double) reached;
+    }
+
+    public long getFailures(int tier) {
+        return failures.get(tier);
+    }
+
+    //time this tier adds to the requests that escalate to it
+    public LatencyStats getTierLatency(int tier) {
+        return tierLatency[tier];
+    }
+
+    @Override
+    public Task<Classification> classify(Bitmap bitmap, ImageOrientation orientation, @Nullable CancellationToken cancellationToken) {
+        TaskCompletionSource<Classification> source = Classifiers.newSource(cancellationToken);
+        runTier(0, null, System.nanoTime(), bitmap, orientation, cancellationToken, source);
+        return source.getTask();
+    }
+
+    private void runTier(final int tier, @Nullable final Classification best, final long start, final Bitmap bitmap,
+                         final ImageOrientation orientation, @Nullable final CancellationToken cancellationToken,
+                         final TaskCompletionSource<Classification> source) {
+        if (source.getTask().isComplete())
+            return;
+        if (tier == tiers.size()) {
+            if (best == null) {
+                source.trySetException(new IllegalStateException("Every tier of the cascade failed"));
+            } else {
+                latencyStats.record(System.nanoTime() - start);
+                source.trySetResult(best);
+            }
+            return;
+        }
+        attempts.incrementAndGet(tier);
+        final long tierStart = System.nanoTime();
+        tiers.get(tier).classify(bitmap, orientation, cancellationToken)
+                .addOnCompleteListener(Classifiers.DIRECT, new OnCompleteListener<Classification>() {
+                    @Override
+                    public void onComplete(@NonNull Task<Classification> task) {
+                        tierLatency[tier].record(System.nanoTime() - tierStart);
+                        if (task.isCanceled())
+                            return;
+                        Classification next = best;
+                        if (task.isSuccessful()) {
+                            Classification classification = task.getResult();
+                            if (policy.isConfident(classification)) {
+                                hits.incrementAndGet(tier);
+                                latencyStats.record(System.nanoTime() - start);
+                                source.trySetResult(classification);
+                                return;
+                            }
+                            if (best == null || policy.confidenceOf(classification) > policy.confidenceOf(best))
+                                next = classification;
+                        } else {
+                            //an unavailable tier, such as the cloud while offline, is skipped
+                            failures.incrementAndGet(tier);
+                        }
+                        runTier(tier + 1, next, start, bitmap, orientation, cancellationToken, source);
+                    }
+                });
+    }
+
+    //the tiers belong to the caller and are not closed here
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CascadeClassifier {" + policy + ", total " + latencyStats);
+        for (int i = 0; i < tiers.size(); i++) {
+            builder.append(String.format(Locale.US, ", %s: hit=%.2f escalated=%.2f failed=%d %s",
+                    tiers.get(i).getName(), getHitRate(i), getEscalationRate(i), failures.get(i), tierLatency[i]));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.garbageclassifier;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//Resolves every model output index to a waste category once at load time,
+//so the inference path only does array lookups instead of string comparisons
+public class CategoryIndex {
+
+    public static final int NO_CATEGORY = -1;
+    public static final int PLASTIC = 0;
+    public static final int PAPER = 1;
+    public static final int METAL = 2;
+    public static final int GLASS = 3;
+    public static final String[] CATEGORY_NAMES = {"plastic", "paper", "metal", "glass"};
+    public static final int CATEGORY_COUNT = CATEGORY_NAMES.length;
+
+    private final byte[] categoryOfLabel;
+    private final int[] labelCounts = new int[CATEGORY_COUNT];
+    private final Map<String, Integer> categoryByName;
+
+    //categoryLabels.get(i) holds the model labels that belong to category i,
+    //earlier categories win when a label is listed more than once
+    public CategoryIndex(List<String> labels, List<List<String>> categoryLabels) {
+        categoryByName = new HashMap<>();
+        for (int category = 0; category < categoryLabels.size() && category < CATEGORY_COUNT; category++) {
+            for (String label : categoryLabels.get(category)) {
+                if (label == null)
+                    continue;
+                String key = label.toLowerCase(Locale.US);
+                if (!categoryByName.containsKey(key)) {
+                    categoryByName.put(key, category);
+                }
+            }
+        }
+
+        categoryOfLabel = new byte[labels.size()];
+        for (int i = 0; i < labels.size(); i++) {
+            int category = categoryOf(labels.get(i));
+            categoryOfLabel[i] = (byte) category;
+            if (category != NO_CATEGORY) labelCounts[category]++;
+        }
+    }
+
+    public int size() {
+        return categoryOfLabel.length;
+    }
+
+    public int categoryOf(int labelIndex) {
+        return categoryOfLabel[labelIndex];
+    }
+
+    //number of model outputs that fold into the given category
+    public int labelCount(int category) {
+        return labelCounts[category];
+    }
+
+    //case-insensitive string lookup, only meant for load time or for engines with their own label set
+    public int categoryOf(String label) {
+        Integer category = categoryByName.get(label.toLowerCase(Locale.US));
+        return category == null ? NO_CATEGORY : category;
+    }
+
+    public static String nameOf(int category) {
+        return category == NO_CATEGORY ? null : CATEGORY_NAMES[category];
+    }
+}
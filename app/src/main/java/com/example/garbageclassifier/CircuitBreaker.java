@@ -0,0 +1,94 @@
+package com.example.garbageclassifier;
+
+//Stops calling a failing service for a while. After failureThreshold failures in a row the
+//breaker opens and refuses calls for openMillis; then one trial call is let through (half
+//open) and its outcome closes or reopens the breaker. Every acquired call has to end in
+//recordSuccess, recordFailure or release. Thread safe.
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+    private long trips;
+    private long rejected;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        if (failureThreshold < 1)
+            throw new IllegalArgumentException("failureThreshold must be at least 1, was " + failureThreshold);
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openMillis * 1000000L;
+    }
+
+    //true if a call may go out now, callers must report its outcome
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.CLOSED)
+            return true;
+        if (state == State.HALF_OPEN && !trialInFlight) {
+            trialInFlight = true;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    //whether tryAcquire would currently refuse, without taking the half-open trial
+    public synchronized boolean isRejecting() {
+        if (state == State.OPEN)
+            return System.nanoTime() - openedAt < openNanos;
+        return state == State.HALF_OPEN && trialInFlight;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+        state = State.CLOSED;
+    }
+
+    //for a call that ended without an outcome, e.g. interrupted; frees the half-open trial
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN)
+                trips++;
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    //how many times the breaker has opened
+    public synchronized long getTrips() {
+        return trips;
+    }
+
+    //calls refused while open
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker {" + "state=" + state + ", failures=" + consecutiveFailures + ", trips=" + trips + ", rejected=" + rejected + '}';
+    }
+}
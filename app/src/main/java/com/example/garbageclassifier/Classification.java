@@ -0,0 +1,75 @@
+package com.example.garbageclassifier;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+//Immutable outcome of one classification by one engine: labels sorted by confidence,
+//one score per waste category and how long the engine took
+public final class Classification {
+
+    private final String engine;
+    private final List<Recognition> labels;
+    private final float[] categoryScores;
+    private final long latencyNanos;
+
+    public Classification(String engine, List<Recognition> labels, float[] categoryScores, long latencyNanos) {
+        List<Recognition> sorted = new ArrayList<>(labels);
+        Collections.sort(sorted);
+        this.engine = engine;
+        this.labels = Collections.unmodifiableList(sorted);
+        this.categoryScores = categoryScores.clone();
+        this.latencyNanos = latencyNanos;
+    }
+
+    //for engines with their own vocabulary: labels that match a category list add to its score
+    public static Classification fromLabels(String engine, List<Recognition> labels, CategoryIndex categoryIndex, long latencyNanos) {
+        float[] categoryScores = new float[CategoryIndex.CATEGORY_COUNT];
+        for (Recognition label : labels) {
+            int category = categoryIndex.categoryOf(label.getName());
+            if (category != CategoryIndex.NO_CATEGORY)
+                categoryScores[category] += label.getConfidence();
+        }
+        return new Classification(engine, labels, categoryScores, latencyNanos);
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public List<Recognition> getLabels() {
+        return labels;
+    }
+
+    //highest ranked label, null when the engine found nothing
+    public Recognition getTopLabel() {
+        return labels.isEmpty() ? null : labels.get(0);
+    }
+
+    public float getCategoryScore(int category) {
+        return categoryScores[category];
+    }
+
+    //category with the highest score, NO_CATEGORY if nothing matched
+    public int getTopCategory() {
+        int best = CategoryIndex.NO_CATEGORY;
+        float bestScore = 0f;
+        for (int c = 0; c < categoryScores.length; c++) {
+            if (categoryScores[c] > bestScore) {
+                bestScore = categoryScores[c];
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "Classification {" + "engine=" + engine + ", top=" + getTopLabel()
+                + ", category=" + CategoryIndex.nameOf(getTopCategory()) + ", latency=" + latencyNanos / 1000000 + "ms}";
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.garbageclassifier;
+
+import java.util.List;
+
+//One aggregated score per waste category plus the top raw model labels
+public class ClassificationResult {
+
+    private final float[] categoryScores = new float[CategoryIndex.CATEGORY_COUNT];
+    private final int[] topIndices;
+    private final float[] topConfidences;
+    private int topCount;
+    private List<String> labels;
+
+    public ClassificationResult(int maxLabels) {
+        topIndices = new int[maxLabels];
+        topConfidences = new float[maxLabels];
+    }
+
+    void reset(List<String> labels) {
+        this.labels = labels;
+        topCount = 0;
+        for (int c = 0; c < categoryScores.length; c++) {
+            categoryScores[c] = 0f;
+        }
+    }
+
+    float[] getCategoryScores() {
+        return categoryScores;
+    }
+
+    void setTopLabel(int rank, int index, float confidence) {
+        topIndices[rank] = index;
+        topConfidences[rank] = confidence;
+    }
+
+    void setTopLabelCount(int count) {
+        topCount = count;
+    }
+
+    public int getCapacity() {
+        return topIndices.length;
+    }
+
+    //keeps the top labels sorted by confidence, capacity is tiny so insertion is enough
+    void offerLabel(int index, float confidence) {
+        int capacity = topIndices.length;
+        if (topCount == capacity && confidence <= topConfidences[capacity - 1]) {
+            return;
+        }
+        int position = topCount < capacity ? topCount++ : capacity - 1;
+        while (position > 0 && topConfidences[position - 1] < confidence) {
+            topIndices[position] = topIndices[position - 1];
+            topConfidences[position] = topConfidences[position - 1];
+            position--;
+        }
+        topIndices[position] = index;
+        topConfidences[position] = confidence;
+    }
+
+    public float getCategoryScore(int category) {
+        return categoryScores[category];
+    }
+
+    //category with the highest aggregated score, NO_CATEGORY if nothing matched
+    public int getTopCategory() {
+        int best = CategoryIndex.NO_CATEGORY;
+        float bestScore = 0f;
+        for (int c = 0; c < categoryScores.length; c++) {
+            if (categoryScores[c] > bestScore) {
+                bestScore = categoryScores[c];
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    public String getTopCategoryName() {
+        return CategoryIndex.nameOf(getTopCategory());
+    }
+
+    public int getTopLabelCount() {
+        return topCount;
+    }
+
+    public int getTopLabelIndex(int rank) {
+        return topIndices[rank];
+    }
+
+    public String getTopLabel(int rank) {
+        return labels.get(topIndices[rank]);
+    }
+
+    public float getTopConfidence(int rank) {
+        return topConfidences[rank];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ClassificationResult {");
+        for (int c = 0; c < categoryScores.length; c++) {
+            builder.append(CategoryIndex.CATEGORY_NAMES[c]).append('=').append(categoryScores[c]).append(", ");
+        }
+        builder.append("top=[");
+        for (int i = 0; i < topCount; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(getTopLabel(i)).append('=').append(topConfidences[i]);
+        }
+        return builder.append("]}").toString();
+    }
+}
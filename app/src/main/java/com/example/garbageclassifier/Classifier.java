@@ -0,0 +1,24 @@
+package com.example.garbageclassifier;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.Task;
+
+//Common contract of the TFLite, ML Kit and Firebase engines. classify() never blocks; the task
+//completes with the engine's result, fails, or is cancelled through the token.
+public interface Classifier {
+
+    String getName();
+
+    //latency of successful classify() calls, from the call to the result
+    LatencyStats getLatencyStats();
+
+    //orientation says how the bitmap's pixels have to be turned to be upright, engines apply it while reading
+    Task<Classification> classify(Bitmap bitmap, ImageOrientation orientation, @Nullable CancellationToken cancellationToken);
+
+    //releases the engine's resources, later calls to classify fail
+    void close();
+}
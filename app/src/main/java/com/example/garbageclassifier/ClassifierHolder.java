@@ -0,0 +1,92 @@
+package com.example.garbageclassifier;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+
+//Process-wide, reference-counted owner of the one warm ImageClassifier.
+//Activities acquire() in onCreate and release() in onDestroy, so rotations and trips through
+//MapActivity reuse the same interpreter. Once no activity holds it, the native interpreter is
+//closed when memory gets tight, and the next getClassifier() transparently loads a new one.
+public class ClassifierHolder implements ComponentCallbacks2 {
+
+    private static final String TAG = "ClassifierHolder";
+
+    private final Context appContext;
+    private ClassifierLoader loader;
+    private int references;
+
+    public ClassifierHolder(Context context) {
+        appContext = context.getApplicationContext();
+    }
+
+    public synchronized void acquire() {
+        references++;
+        ensureLoading();
+    }
+
+    //the interpreter stays warm after the last release, until onTrimMemory asks for it back
+    public synchronized void release() {
+        if (references > 0)
+            references--;
+    }
+
+    public synchronized int getReferenceCount() {
+        return references;
+    }
+
+    public synchronized Task<ImageClassifier> getClassifier() {
+        return ensureLoading().getReady();
+    }
+
+    public synchronized boolean isReady() {
+        return loader != null && loader.isReady();
+    }
+
+    //also retries after a failed load
+    private ClassifierLoader ensureLoading() {
+        if (loader == null || (loader.getReady().isComplete() && !loader.getReady().isSuccessful()))
+            loader = ClassifierLoader.start(appContext);
+        return loader;
+    }
+
+    //closes the native interpreter (once it has finished loading) and forgets it
+    public synchronized void close() {
+        if (loader == null)
+            return;
+        ClassifierLoader closing = loader;
+        loader = null;
+        closing.getReady().addOnSuccessListener(new OnSuccessListener<ImageClassifier>() {
+            @Override
+            public void onSuccess(ImageClassifier classifier) {
+                classifier.close();
+                Log.d(TAG, "Classifier closed");
+            }
+        });
+    }
+
+    //an interpreter that an activity still holds is never closed, it would fail that activity's next request
+    @Override
+    public synchronized void onTrimMemory(int level) {
+        if (references == 0 && level >= TRIM_MEMORY_RUNNING_LOW) {
+            Log.d(TAG, "Releasing classifier on trim level " + level);
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void onLowMemory() {
+        if (references == 0)
+            close();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
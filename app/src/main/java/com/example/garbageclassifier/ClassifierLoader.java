@@ -0,0 +1,65 @@
+package com.example.garbageclassifier;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Builds the ImageClassifier on a background thread and warms it up, so the UI thread never
+//maps the model or allocates tensors. Work asked for before the model is ready can simply be
+//chained on getReady(), Task listeners run in order once it completes.
+public class ClassifierLoader {
+
+    private static final String TAG = "ClassifierLoader";
+
+    private final TaskCompletionSource<ImageClassifier> ready = new TaskCompletionSource<>();
+    private final StageTimer timer = new StageTimer();
+
+    private ClassifierLoader() {
+    }
+
+    public static ClassifierLoader start(Context context) {
+        final Context appContext = context.getApplicationContext();
+        final ClassifierLoader loader = new ClassifierLoader();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loader.load(appContext);
+                executor.shutdown();
+            }
+        });
+        return loader;
+    }
+
+    private void load(Context context) {
+        try {
+            ClassifierModel model = ClassifierModel.load(context, timer);
+            ImageClassifier classifier = ImageClassifier.createTuned(context, model);
+            timer.mark("interpreter (" + classifier.getBackend() + ")");
+            classifier.warmUp();
+            timer.mark("warm-up");
+            Log.d(TAG, "Classifier ready: " + timer);
+            ready.setResult(classifier);
+        } catch (Exception e) {
+            Log.d(TAG, "Classifier failed to load after " + timer, e);
+            ready.setException(e);
+        }
+    }
+
+    public Task<ImageClassifier> getReady() {
+        return ready.getTask();
+    }
+
+    public boolean isReady() {
+        return ready.getTask().isComplete() && ready.getTask().isSuccessful();
+    }
+
+    public StageTimer getStartupTimings() {
+        return timer;
+    }
+}
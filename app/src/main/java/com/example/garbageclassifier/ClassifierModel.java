@@ -0,0 +1,85 @@
+package com.example.garbageclassifier;
+
+import android.content.Context;
+
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+//The read-only parts of the classifier: memory-mapped model, labels and category index.
+//Loaded once and shared by every interpreter that runs the model.
+public class ClassifierModel {
+
+    static final String MODEL_FILE = "mobilenet_v1_1.0_224_quant.tflite";
+    static final String LABEL_FILE = "labels_mobilenet_quant_v1_224.txt";
+
+    private final MappedByteBuffer modelBuffer;
+    private final List<String> labels;
+    private final CategoryIndex categoryIndex;
+
+    private ClassifierModel(MappedByteBuffer modelBuffer, List<String> labels, CategoryIndex categoryIndex) {
+        this.modelBuffer = modelBuffer;
+        this.labels = labels;
+        this.categoryIndex = categoryIndex;
+    }
+
+    public static ClassifierModel load(Context context) throws IOException {
+        return load(context, new StageTimer());
+    }
+
+    public static ClassifierModel load(Context context, StageTimer timer) throws IOException {
+        MappedByteBuffer modelBuffer = FileUtil.loadMappedFile(context, MODEL_FILE);
+        timer.mark("map model");
+        List<String> labels = FileUtil.loadLabels(context, LABEL_FILE);
+        timer.mark("labels");
+
+        //resolve every output index to its category once, instead of on every inference
+        CategoryIndex categoryIndex = loadCategoryIndex(context, labels);
+        timer.mark("categories");
+        return new ClassifierModel(modelBuffer, labels, categoryIndex);
+    }
+
+    //category lists from the assets; engines with their own labels can pass an empty label list
+    public static CategoryIndex loadCategoryIndex(Context context, List<String> labels) {
+        List<List<String>> categoryLabels = new ArrayList<>();
+        categoryLabels.add(loadCategoryList(context, "plastics.txt"));
+        categoryLabels.add(loadCategoryList(context, "papers.txt"));
+        categoryLabels.add(loadCategoryList(context, "metals.txt"));
+        categoryLabels.add(loadCategoryList(context, "glass.txt"));
+        return new CategoryIndex(labels, categoryLabels);
+    }
+
+    private static List<String> loadCategoryList(Context context, String fileName) {
+        List<String> list = new ArrayList<>();
+        try {
+            final InputStream file = context.getAssets().open(fileName);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                list.add(line.trim());
+            }
+            reader.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return list;
+    }
+
+    public MappedByteBuffer getModelBuffer() {
+        return modelBuffer;
+    }
+
+    public List<String> getLabels() {
+        return labels;
+    }
+
+    public CategoryIndex getCategoryIndex() {
+        return categoryIndex;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.garbageclassifier;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+//Helpers for composing Classifier tasks: cancellation-aware sources and timeouts
+public final class Classifiers {
+
+    //runs listeners on whichever thread completes the task
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "classifier-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private Classifiers() {
+    }
+
+    //a source whose task is cancelled as soon as the token is, if there is one
+    public static <T> TaskCompletionSource<T> newSource(@Nullable CancellationToken token) {
+        return token == null ? new TaskCompletionSource<T>() : new TaskCompletionSource<T>(token);
+    }
+
+    //mirrors `task` into `source`, unless the source already completed (cancelled or timed out)
+    public static <T> void forward(Task<T> task, final TaskCompletionSource<T> source) {
+        task.addOnCompleteListener(DIRECT, new OnCompleteListener<T>() {
+            @Override
+            public void onComplete(@NonNull Task<T> completed) {
+                if (completed.isSuccessful())
+                    source.trySetResult(completed.getResult());
+                else if (completed.isCanceled())
+                    source.trySetException(new CancellationException());
+                else
+                    source.trySetException(completed.getException());
+            }
+        });
+    }
+
+    //fails with TimeoutException if `task` has not completed within the deadline
+    public static <T> Task<T> withTimeout(Task<T> task, long timeout, TimeUnit unit) {
+        final TaskCompletionSource<T> source = new TaskCompletionSource<>();
+        forward(task, source);
+        final long millis = unit.toMillis(timeout);
+        TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                source.trySetException(new TimeoutException("No result within " + millis + "ms"));
+            }
+        }, timeout, unit);
+        return source.getTask();
+    }
+}
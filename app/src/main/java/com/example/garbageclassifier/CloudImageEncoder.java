@@ -0,0 +1,216 @@
+package com.example.garbageclassifier;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//Encodes images for the cloud classifier within a byte budget. Resolution and quality start
+//from what fit the previous image and step down until the compressed image fits. The
+//compressed bytes, the scaled bitmap and the Base64 text all live in buffers reused across
+//calls, so the only per-request copy is the content String the request map needs. The image
+//is turned upright in the same draw that scales it, the cloud has no other way to know.
+//Not thread safe.
+public class CloudImageEncoder {
+
+    public enum Format { JPEG, WEBP }
+
+    public static final int DEFAULT_BYTE_BUDGET = 64 * 1024;
+    //Cloud Vision does not need more than this for label detection
+    public static final int DEFAULT_MAX_DIMENSION = 640;
+    private static final int MIN_DIMENSION = 160;
+    private static final int MAX_QUALITY = 90;
+    private static final int MIN_QUALITY = 50;
+    private static final int QUALITY_STEP = 15;
+    private static final int MAX_ATTEMPTS = 5;
+
+    //exposes its buffer so the compressed bytes are read without toByteArray()
+    private static class ReusableOutputStream extends ByteArrayOutputStream {
+        ReusableOutputStream(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    private final int byteBudget;
+    private final int maxDimension;
+    private final Format format;
+    private final ReusableOutputStream compressed;
+    private final StringBuilder base64;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix matrix = new Matrix();
+    private final RectF bounds = new RectF();
+    private Bitmap scaled;
+    private Canvas canvas;
+
+    //where the next image starts
+    private int dimension;
+    private int quality = MAX_QUALITY;
+
+    private final LatencyStats encodeStats = new LatencyStats(256);
+    private long requests;
+    private long uploadBytes;
+    private int lastBytes, lastWidth, lastHeight, lastQuality, lastAttempts;
+
+    public CloudImageEncoder(int byteBudget, int maxDimension, Format format) {
+        this.byteBudget = byteBudget;
+        this.maxDimension = maxDimension;
+        this.format = format;
+        dimension = maxDimension;
+        compressed = new ReusableOutputStream(byteBudget + byteBudget / 4);
+        base64 = new StringBuilder(Base64Writer.encodedLength(byteBudget));
+    }
+
+    public CloudImageEncoder() {
+        this(DEFAULT_BYTE_BUDGET, DEFAULT_MAX_DIMENSION, Format.JPEG);
+    }
+
+    //a LABEL_DETECTION AnnotateImageRequest with the image inlined
+    public Map<String, Object> buildLabelRequest(Bitmap bitmap, ImageOrientation orientation, int maxResults) {
+        Map<String, Object> request = new HashMap<>();
+        request.put("image", Collections.singletonMap("content", encode(bitmap, orientation)));
+        Map<String, Object> feature = new HashMap<>();
+        feature.put("maxResults", maxResults);
+        feature.put("type", "LABEL_DETECTION");
+        request.put("features", Collections.singletonList(feature));
+        return request;
+    }
+
+    //Base64 of the compressed image. Never upscales; may go over the budget only once
+    //resolution and quality are both at their minimum.
+    public String encode(Bitmap bitmap, ImageOrientation orientation) {
+        long start = System.nanoTime();
+        int longSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            Bitmap source = scaleDown(bitmap, Math.min(dimension, longSide), orientation);
+            compressed.reset();
+            source.compress(compressFormat(), quality, compressed);
+            int size = compressed.size();
+            if (size <= byteBudget || attempts == MAX_ATTEMPTS || (quality == MIN_QUALITY && dimension <= MIN_DIMENSION)) {
+                lastWidth = source.getWidth();
+                lastHeight = source.getHeight();
+                break;
+            }
+            double ratio = byteBudget / (double) size;
+            if ((ratio < 0.5 || quality == MIN_QUALITY) && dimension > MIN_DIMENSION) {
+                //size goes roughly with the pixel count, quality alone will not close a big gap
+                int current = Math.min(dimension, longSide);
+                dimension = Math.max(MIN_DIMENSION, (int) (current * Math.sqrt(ratio) * 0.95));
+            } else {
+                quality = Math.max(MIN_QUALITY, quality - QUALITY_STEP);
+            }
+        }
+        lastBytes = compressed.size();
+        lastQuality = quality;
+        lastAttempts = attempts;
+
+        //well under budget, let the next image try for more detail
+        if (lastBytes < byteBudget / 2) {
+            if (quality < MAX_QUALITY)
+                quality = Math.min(MAX_QUALITY, quality + QUALITY_STEP);
+            else
+                dimension = Math.min(maxDimension, dimension + dimension / 4);
+        }
+
+        base64.setLength(0);
+        Base64Writer.append(compressed.buffer(), 0, lastBytes, base64);
+        String content = base64.toString();
+        encodeStats.record(System.nanoTime() - start);
+        requests++;
+        uploadBytes += content.length();
+        return content;
+    }
+
+    private Bitmap.CompressFormat compressFormat() {
+        if (format == Format.JPEG)
+            return Bitmap.CompressFormat.JPEG;
+        return Build.VERSION.SDK_INT >= 30 ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    //draws, scaled and upright, into a scratch bitmap that is only reallocated when the size changes
+    private Bitmap scaleDown(Bitmap bitmap, int maxSide, ImageOrientation orientation) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        boolean fits = Math.max(width, height) <= maxSide;
+        if (fits && orientation.equals(ImageOrientation.NORMAL))
+            return bitmap;
+        if (!fits) {
+            if (width >= height) {
+                height = Math.max(1, Math.round(height * maxSide / (float) width));
+                width = maxSide;
+            } else {
+                width = Math.max(1, Math.round(width * maxSide / (float) height));
+                height = maxSide;
+            }
+        }
+        //clockwise quarter turns, then the mirror, moved back to the origin
+        matrix.setScale(width / (float) bitmap.getWidth(), height / (float) bitmap.getHeight());
+        matrix.postRotate(orientation.getRotationDegrees());
+        if (orientation.isMirrored())
+            matrix.postScale(-1f, 1f);
+        bounds.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        matrix.mapRect(bounds);
+        matrix.postTranslate(-bounds.left, -bounds.top);
+        int outWidth = Math.round(bounds.width());
+        int outHeight = Math.round(bounds.height());
+        if (scaled == null || scaled.getWidth() != outWidth || scaled.getHeight() != outHeight) {
+            scaled = Bitmap.createBitmap(outWidth, outHeight, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(scaled);
+        }
+        canvas.drawBitmap(bitmap, matrix, paint);
+        return scaled;
+    }
+
+    public int getByteBudget() {
+        return byteBudget;
+    }
+
+    //compressed size of the last image, before Base64
+    public int getLastEncodedBytes() {
+        return lastBytes;
+    }
+
+    public int getLastWidth() {
+        return lastWidth;
+    }
+
+    public int getLastHeight() {
+        return lastHeight;
+    }
+
+    public int getLastQuality() {
+        return lastQuality;
+    }
+
+    public int getLastAttempts() {
+        return lastAttempts;
+    }
+
+    public LatencyStats getEncodeStats() {
+        return encodeStats;
+    }
+
+    //Base64 characters sent per request on average
+    public double getMeanUploadBytes() {
+        return requests == 0 ? 0 : uploadBytes / (double) requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "CloudImageEncoder {last=%dx%d q%d %dB in %d tries, meanUpload=%.0fB, encode %s}",
+                lastWidth, lastHeight, lastQuality, lastBytes, lastAttempts, getMeanUploadBytes(), encodeStats);
+    }
+}
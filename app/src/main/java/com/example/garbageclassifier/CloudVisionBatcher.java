@@ -0,0 +1,207 @@
+package com.example.garbageclassifier;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+//Collects annotate requests for a short window, or until maxBatchSize are waiting, and sends
+//them as one call. Each response is handed back to the callback of the request at its index.
+//Callbacks run on the batcher's thread.
+public class CloudVisionBatcher {
+
+    //Cloud Vision accepts at most 16 images per images:annotate call
+    public static final int MAX_BATCH_SIZE = 16;
+
+    public interface Callback {
+        void onResponse(Map<String, Object> response);
+
+        void onError(Exception e);
+    }
+
+    private static class Pending {
+        final Map<String, Object> request;
+        final Callback callback;
+
+        Pending(Map<String, Object> request, Callback callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+    }
+
+    private final CloudVisionTransport transport;
+    private final long windowMillis;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService executor;
+    private final LatencyStats callStats = new LatencyStats(256);
+    //guarded by this
+    private final List<Pending> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    private boolean closed;
+    private long batchesSent;
+    private long imagesSent;
+
+    public CloudVisionBatcher(CloudVisionTransport transport, long windowMillis, int maxBatchSize) {
+        if (maxBatchSize < 1 || maxBatchSize > MAX_BATCH_SIZE)
+            throw new IllegalArgumentException("maxBatchSize must be between 1 and " + MAX_BATCH_SIZE + ", was " + maxBatchSize);
+        this.transport = transport;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cloud-vision-batcher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    //one AnnotateImageRequest ({"image": ..., "features": [...]})
+    public void submit(Map<String, Object> request, Callback callback) {
+        synchronized (this) {
+            if (!closed) {
+                pending.add(new Pending(request, callback));
+                //the window timer sends whatever is waiting, a full batch goes out right away
+                if (!flushScheduled) {
+                    flushScheduled = true;
+                    schedule(windowMillis, true);
+                }
+                if (pending.size() >= maxBatchSize)
+                    schedule(0, false);
+                return;
+            }
+        }
+        callback.onError(new IllegalStateException("CloudVisionBatcher is closed"));
+    }
+
+    private void schedule(long delayMillis, final boolean windowEnded) {
+        try {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush(windowEnded);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            //closing, close() fails whatever is still pending
+        }
+    }
+
+    //sends full batches, and once the window has ended everything else that is waiting
+    private void flush(boolean windowEnded) {
+        while (true) {
+            List<Pending> batch;
+            synchronized (this) {
+                if (pending.isEmpty() || (!windowEnded && pending.size() < maxBatchSize)) {
+                    if (windowEnded)
+                        flushScheduled = false;
+                    return;
+                }
+                int size = Math.min(maxBatchSize, pending.size());
+                batch = new ArrayList<>(pending.subList(0, size));
+                pending.subList(0, size).clear();
+            }
+            send(batch);
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        List<Object> requests = new ArrayList<>(batch.size());
+        for (Pending item : batch) {
+            requests.add(item.request);
+        }
+        Map<String, Object> payload = Collections.<String, Object>singletonMap("requests", requests);
+
+        Object responses;
+        long start = System.nanoTime();
+        try {
+            responses = transport.annotate(payload).get("responses");
+        } catch (Exception e) {
+            fail(batch, e);
+            return;
+        } finally {
+            callStats.record(System.nanoTime() - start);
+        }
+        synchronized (this) {
+            batchesSent++;
+            imagesSent += batch.size();
+        }
+        if (!(responses instanceof List) || ((List<?>) responses).size() != batch.size()) {
+            fail(batch, new IOException("Expected " + batch.size() + " responses, got " + responses));
+            return;
+        }
+        List<?> list = (List<?>) responses;
+        for (int i = 0; i < batch.size(); i++) {
+            deliver(batch.get(i).callback, list.get(i));
+        }
+    }
+
+    //a response may carry its own error while the rest of the batch succeeded. That error is
+    //about the image itself, sending it again would only get the same answer.
+    @SuppressWarnings("unchecked")
+    private static void deliver(Callback callback, Object response) {
+        if (!(response instanceof Map)) {
+            callback.onError(new CloudVisionException("Unexpected response: " + response, false));
+            return;
+        }
+        Map<String, Object> map = (Map<String, Object>) response;
+        Object error = map.get("error");
+        if (error != null)
+            callback.onError(new CloudVisionException("Cloud Vision error: " + error, false));
+        else
+            callback.onResponse(map);
+    }
+
+    private static void fail(List<Pending> batch, Exception e) {
+        for (Pending item : batch) {
+            item.callback.onError(e);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getBatchesSent() {
+        return batchesSent;
+    }
+
+    public synchronized long getImagesSent() {
+        return imagesSent;
+    }
+
+    public synchronized double getMeanBatchSize() {
+        return batchesSent == 0 ? 0 : imagesSent / (double) batchesSent;
+    }
+
+    //round trip of each batched call, failed ones included
+    public LatencyStats getCallStats() {
+        return callStats;
+    }
+
+    //requests that have not been sent yet fail, a batch in flight still completes
+    public void close() {
+        List<Pending> dropped;
+        synchronized (this) {
+            closed = true;
+            dropped = new ArrayList<>(pending);
+            pending.clear();
+        }
+        executor.shutdown();
+        fail(dropped, new IllegalStateException("CloudVisionBatcher is closed"));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "CloudVisionBatcher {batches=%d images=%d meanBatch=%.1f pending=%d call %s}",
+                batchesSent, imagesSent, getMeanBatchSize(), pending.size(), callStats);
+    }
+}
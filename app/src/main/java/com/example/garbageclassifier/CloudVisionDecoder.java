@@ -0,0 +1,54 @@
+package com.example.garbageclassifier;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+//Reads Cloud Vision responses straight from the Map/List tree the callable SDK (or GSON, for
+//raw HTTP bodies) hands back, without serializing it to a string and parsing it again
+public final class CloudVisionDecoder {
+
+    //shared by everything that reads or writes Cloud Vision JSON, Gson is thread safe
+    public static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    private CloudVisionDecoder() {
+    }
+
+    //labels of one AnnotateImageResponse, entries without a description are skipped
+    public static List<LabelAnnotation> decodeLabels(Map<?, ?> response) {
+        Object labels = response.get("labelAnnotations");
+        if (!(labels instanceof List))
+            return Collections.emptyList();
+        List<?> list = (List<?>) labels;
+        List<LabelAnnotation> annotations = new ArrayList<>(list.size());
+        for (Object item : list) {
+            if (!(item instanceof Map))
+                continue;
+            Map<?, ?> label = (Map<?, ?>) item;
+            Object description = label.get("description");
+            if (!(description instanceof String))
+                continue;
+            Object mid = label.get("mid");
+            annotations.add(new LabelAnnotation(mid instanceof String ? (String) mid : null, (String) description,
+                    floatOf(label.get("score")), floatOf(label.get("topicality"))));
+        }
+        return annotations;
+    }
+
+    //missing numbers are zero; the callable SDK may hand back Integer, Long or Double
+    private static float floatOf(Object value) {
+        return value instanceof Number ? ((Number) value).floatValue() : 0f;
+    }
+
+    public static List<Recognition> toRecognitions(List<LabelAnnotation> annotations) {
+        List<Recognition> recognitions = new ArrayList<>(annotations.size());
+        for (LabelAnnotation annotation : annotations) {
+            recognitions.add(new Recognition(annotation.getDescription(), annotation.getScore()));
+        }
+        return recognitions;
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.garbageclassifier;
+
+//An error answer from the cloud function. Transient ones (overloaded, unavailable, internal)
+//are worth retrying, the others (bad request, unauthenticated) are not.
+public class CloudVisionException extends Exception {
+
+    private final boolean transientError;
+
+    public CloudVisionException(String message, boolean transientError) {
+        super(message);
+        this.transientError = transientError;
+    }
+
+    public CloudVisionException(String message, boolean transientError, Throwable cause) {
+        super(message, cause);
+        this.transientError = transientError;
+    }
+
+    public boolean isTransient() {
+        return transientError;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.garbageclassifier;
+
+import java.util.Map;
+
+//Sends one batched Cloud Vision call. The payload is {"requests": [...]} and the answer
+//{"responses": [...]}, in the same order, like Vision's images:annotate. Called off the main
+//thread and allowed to block.
+public interface CloudVisionTransport {
+
+    Map<String, Object> annotate(Map<String, Object> batchRequest) throws Exception;
+}
@@ -0,0 +1,55 @@
+package com.example.garbageclassifier;
+
+//Decides whether a classification is sure enough to act on: the top waste category has to reach
+//minScore and beat the runner-up category by at least minMargin
+public class ConfidencePolicy {
+
+    public static final ConfidencePolicy DEFAULT = new ConfidencePolicy(0.6f, 0.2f);
+
+    private final float minScore;
+    private final float minMargin;
+
+    public ConfidencePolicy(float minScore, float minMargin) {
+        this.minScore = minScore;
+        this.minMargin = minMargin;
+    }
+
+    public float getMinScore() {
+        return minScore;
+    }
+
+    public float getMinMargin() {
+        return minMargin;
+    }
+
+    public boolean isConfident(Classification classification) {
+        int top = classification.getTopCategory();
+        if (top == CategoryIndex.NO_CATEGORY)
+            return false;
+        float topScore = classification.getCategoryScore(top);
+        return topScore >= minScore && topScore - runnerUpScore(classification, top) >= minMargin;
+    }
+
+    //how far past both thresholds a classification is, used to pick the best of several unsure answers
+    public float confidenceOf(Classification classification) {
+        int top = classification.getTopCategory();
+        if (top == CategoryIndex.NO_CATEGORY)
+            return Float.NEGATIVE_INFINITY;
+        float topScore = classification.getCategoryScore(top);
+        return Math.min(topScore - minScore, topScore - runnerUpScore(classification, top) - minMargin);
+    }
+
+    private static float runnerUpScore(Classification classification, int top) {
+        float runnerUp = 0f;
+        for (int c = 0; c < CategoryIndex.CATEGORY_COUNT; c++) {
+            if (c != top)
+                runnerUp = Math.max(runnerUp, classification.getCategoryScore(c));
+        }
+        return runnerUp;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfidencePolicy {" + "minScore=" + minScore + ", minMargin=" + minMargin + '}';
+    }
+}
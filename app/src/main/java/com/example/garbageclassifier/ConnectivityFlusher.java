@@ -0,0 +1,49 @@
+package com.example.garbageclassifier;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+
+import androidx.annotation.NonNull;
+
+//Flushes the offline queue whenever a network with internet access becomes available
+public class ConnectivityFlusher extends ConnectivityManager.NetworkCallback {
+
+    private final ConnectivityManager connectivityManager;
+    private final OfflineCloudQueue queue;
+    private final CloudVisionBatcher batcher;
+    private final OfflineCloudQueue.Listener listener;
+    private boolean registered;
+
+    public ConnectivityFlusher(Context context, OfflineCloudQueue queue, CloudVisionBatcher batcher, OfflineCloudQueue.Listener listener) {
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.queue = queue;
+        this.batcher = batcher;
+        this.listener = listener;
+    }
+
+    //onAvailable also fires right away when a network is already up, so this flushes leftovers too
+    public void register() {
+        if (registered)
+            return;
+        NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+        connectivityManager.registerNetworkCallback(request, this);
+        registered = true;
+    }
+
+    public void unregister() {
+        if (!registered)
+            return;
+        connectivityManager.unregisterNetworkCallback(this);
+        registered = false;
+    }
+
+    @Override
+    public void onAvailable(@NonNull Network network) {
+        queue.flush(batcher, listener);
+    }
+}
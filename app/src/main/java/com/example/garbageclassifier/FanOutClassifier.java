@@ -0,0 +1,177 @@
+package com.example.garbageclassifier;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.OnTokenCanceledListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//Hands the same bitmap to every engine at once and completes with the first answer the policy
+//accepts, cancelling the others. If nobody is sure, the most confident answer wins once all
+//engines are done. Engines may keep reading the bitmap after they are cancelled.
+public class FanOutClassifier implements Classifier {
+
+    public static final String NAME = "fanout";
+
+    private final List<Classifier> engines;
+    private final ConfidencePolicy policy;
+    private final LatencyStats latencyStats = new LatencyStats(256);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong unsure = new AtomicLong();
+    //per engine: confident wins, failures and time from the fan-out to its answer
+    private final AtomicLongArray wins;
+    private final AtomicLongArray failures;
+    private final LatencyStats[] engineLatency;
+
+    public FanOutClassifier(List<Classifier> engines, ConfidencePolicy policy) {
+        if (engines.isEmpty())
+            throw new IllegalArgumentException("A fan-out needs at least one engine");
+        this.engines = new ArrayList<>(engines);
+        this.policy = policy;
+        wins = new AtomicLongArray(engines.size());
+        failures = new AtomicLongArray(engines.size());
+        engineLatency = new LatencyStats[engines.size()];
+        for (int i = 0; i < engineLatency.length; i++) {
+            engineLatency[i] = new LatencyStats(256);
+        }
+    }
+
+    public FanOutClassifier(ConfidencePolicy policy, Classifier... engines) {
+        this(Arrays.asList(engines), policy);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    //time to the answer that completed the fan-out
+    @Override
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    public int getEngineCount() {
+        return engines.size();
+    }
+
+    public Classifier getEngine(int engine) {
+        return engines.get(engine);
+    }
+
+    //share of requests this engine answered first with enough confidence
+    public double getWinRate(int engine) {
+        long total = requests.get();
+        return total == 0 ? 0 : wins.get(engine) / (double) total;
+    }
+
+    //share of requests where no engine cleared the bar
+    public double getUnsureRate() {
+        long total = requests.get();
+        return total == 0 ? 0 : unsure.get() / (double) total;
+    }
+
+    public long getFailures(int engine) {
+        return failures.get(engine);
+    }
+
+    //answers that arrived before the engine was cancelled, use getPercentileMillis for the tail
+    public LatencyStats getEngineLatency(int engine) {
+        return engineLatency[engine];
+    }
+
+    @Override
+    public Task<Classification> classify(Bitmap bitmap, ImageOrientation orientation, @Nullable CancellationToken cancellationToken) {
+        final TaskCompletionSource<Classification> source = Classifiers.newSource(cancellationToken);
+        final CancellationTokenSource losers = new CancellationTokenSource();
+        if (cancellationToken != null) {
+            cancellationToken.onCanceledRequested(new OnTokenCanceledListener() {
+                @Override
+                public void onCanceled() {
+                    losers.cancel();
+                }
+            });
+        }
+        requests.incrementAndGet();
+        final long start = System.nanoTime();
+        final AtomicInteger pending = new AtomicInteger(engines.size());
+        final Classification[] best = new Classification[1];
+
+        for (int i = 0; i < engines.size(); i++) {
+            final int engine = i;
+            engines.get(i).classify(bitmap, orientation, losers.getToken())
+                    .addOnCompleteListener(Classifiers.DIRECT, new OnCompleteListener<Classification>() {
+                        @Override
+                        public void onComplete(@NonNull Task<Classification> task) {
+                            if (task.isSuccessful()) {
+                                long latency = System.nanoTime() - start;
+                                engineLatency[engine].record(latency);
+                                Classification classification = task.getResult();
+                                if (policy.isConfident(classification) && source.trySetResult(classification)) {
+                                    wins.incrementAndGet(engine);
+                                    latencyStats.record(latency);
+                                    losers.cancel();
+                                } else {
+                                    synchronized (best) {
+                                        if (best[0] == null || policy.confidenceOf(classification) > policy.confidenceOf(best[0]))
+                                            best[0] = classification;
+                                    }
+                                }
+                            } else if (!task.isCanceled()) {
+                                failures.incrementAndGet(engine);
+                            }
+                            if (pending.decrementAndGet() == 0)
+                                finish(source, best, start);
+                        }
+                    });
+        }
+        return source.getTask();
+    }
+
+    //every engine answered and none was sure
+    private void finish(TaskCompletionSource<Classification> source, Classification[] best, long start) {
+        if (source.getTask().isComplete())
+            return;
+        Classification result;
+        synchronized (best) {
+            result = best[0];
+        }
+        if (result == null) {
+            source.trySetException(new IllegalStateException("Every engine of the fan-out failed"));
+        } else if (source.trySetResult(result)) {
+            unsure.incrementAndGet();
+            latencyStats.record(System.nanoTime() - start);
+        }
+    }
+
+    //the engines belong to the caller and are not closed here
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.US, "FanOutClassifier {%s, unsure=%.2f, answer %s",
+                policy, getUnsureRate(), latencyStats));
+        for (int i = 0; i < engines.size(); i++) {
+            builder.append(String.format(Locale.US, ", %s: win=%.2f failed=%d p99=%.1fms %s",
+                    engines.get(i).getName(), getWinRate(i), failures.get(i),
+                    engineLatency[i].getPercentileMillis(99), engineLatency[i]));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.garbageclassifier;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.functions.FirebaseFunctions;
+import com.google.firebase.functions.FirebaseFunctionsException;
+import com.google.firebase.functions.HttpsCallableResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+//Annotate calls through the HTTPS callable cloud functions. The deployed annotateImage takes
+//one image per call, so requests go out one at a time unless a function that accepts the
+//whole {"requests": [...]} payload is configured.
+public class FirebaseCloudVisionTransport implements CloudVisionTransport {
+
+    public static final String ANNOTATE_IMAGE = "annotateImage";
+
+    private final FirebaseFunctions functions;
+    private final String functionName;
+    private final boolean batched;
+
+    //`batched` only for a function that answers a whole batch, like Vision's images:annotate
+    public FirebaseCloudVisionTransport(FirebaseFunctions functions, String functionName, boolean batched) {
+        this.functions = functions;
+        this.functionName = functionName;
+        this.batched = batched;
+    }
+
+    public FirebaseCloudVisionTransport() {
+        this(FirebaseFunctions.getInstance(), ANNOTATE_IMAGE, false);
+    }
+
+    //how many requests one annotate() call should carry
+    public int getMaxBatchSize() {
+        return batched ? CloudVisionBatcher.MAX_BATCH_SIZE : 1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> annotate(Map<String, Object> batchRequest) throws Exception {
+        if (batched) {
+            Object data = call(batchRequest);
+            if (!(data instanceof Map))
+                throw new IOException("Unexpected result from " + functionName + ": " + data);
+            return (Map<String, Object>) data;
+        }
+        List<Object> responses = new ArrayList<>();
+        for (Object request : (List<Object>) batchRequest.get("requests")) {
+            //annotateImage takes the JSON of one request and answers with a one element array
+            Object data = call(CloudVisionDecoder.GSON.toJson(request));
+            if (!(data instanceof List) || ((List<Object>) data).isEmpty())
+                throw new IOException("Unexpected result from " + functionName + ": " + data);
+            responses.add(((List<Object>) data).get(0));
+        }
+        Map<String, Object> batchResponse = new HashMap<>();
+        batchResponse.put("responses", responses);
+        return batchResponse;
+    }
+
+    private Object call(Object payload) throws Exception {
+        HttpsCallableResult result;
+        try {
+            result = Tasks.await(functions.getHttpsCallable(functionName).call(payload));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FirebaseFunctionsException) {
+                FirebaseFunctionsException.Code code = ((FirebaseFunctionsException) cause).getCode();
+                throw new CloudVisionException(functionName + " failed with " + code, isTransient(code), cause);
+            }
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+        return result.getData();
+    }
+
+    private static boolean isTransient(FirebaseFunctionsException.Code code) {
+        switch (code) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case RESOURCE_EXHAUSTED:
+            case INTERNAL:
+            case UNKNOWN:
+            case ABORTED:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
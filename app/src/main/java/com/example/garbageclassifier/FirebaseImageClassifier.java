@@ -1,154 +1,200 @@
 package com.example.garbageclassifier;
 
 import android.app.Activity;
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.provider.MediaStore;
-import android.util.Base64;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
-import com.google.android.gms.tasks.Continuation;
-import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.CancellationToken;
 import com.google.android.gms.tasks.Task;
-import com.google.firebase.functions.FirebaseFunctions;
-import com.google.firebase.functions.HttpsCallableResult;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.JsonPrimitive;
-
-import java.io.ByteArrayOutputStream;
-import java.util.ArrayList;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FirebaseImageClassifier implements Classifier {
+
+    public static final String NAME = "firebase";
+    //how long a request waits for others to share its call
+    public static final long BATCH_WINDOW_MILLIS = 100;
 
-public class FirebaseImageClassifier {
+    //the budget of one cloud call, its retries and their backoff included
+    public static final long CALL_DEADLINE_MILLIS = 10000;
+    public static final int BREAKER_FAILURE_THRESHOLD = 5;
+    public static final long BREAKER_OPEN_MILLIS = 30000;
+
+    //names the local record a photo's queued request belongs to, so its answer can be merged back
+    public interface RecordIds {
+        @Nullable
+        String recordIdFor(Bitmap bitmap);
+    }
 
-    private FirebaseFunctions mFunctions;
+    private final CategoryIndex categoryIndex;
+    private final CloudVisionBatcher batcher;
+    @Nullable private final ResilientCloudVisionTransport ownedTransport;
+    @Nullable private final CircuitBreaker breaker;
+    @Nullable private final Classifier fallback;
+    private final LatencyStats latencyStats = new LatencyStats(256);
+    private final CloudImageEncoder encoder = new CloudImageEncoder();
+    private final AtomicLong fallbacks = new AtomicLong();
+    @Nullable private volatile OfflineCloudQueue offlineQueue;
+    @Nullable private volatile RecordIds recordIds;
 
     public FirebaseImageClassifier(Activity activity) {
+        this(activity, (Classifier) null);
+    }
 
+    //while the cloud is failing, requests go to `fallback` instead, usually the local model
+    public FirebaseImageClassifier(Activity activity, @Nullable Classifier fallback) {
+        this(activity, new FirebaseCloudVisionTransport(), fallback);
     }
 
-    public List<Recognition> recognizeImage(Bitmap ibitmap) {
-        Bitmap bitmap = ibitmap;
-        bitmap = scaleBitmapDown(bitmap, 640);
-        List<Recognition> recognitions = new ArrayList<>();
-
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, byteArrayOutputStream);
-        byte[] imageBytes = byteArrayOutputStream.toByteArray();
-        String base64encoded = Base64.encodeToString(imageBytes, Base64.NO_WRAP);
-
-        mFunctions = FirebaseFunctions.getInstance();
-
-        // Create json request to cloud vision
-        JsonObject request = new JsonObject();
-        // Add image to request
-        JsonObject image = new JsonObject();
-        image.add("content", new JsonPrimitive(base64encoded));
-        request.add("image", image);
-        //Add features to the request
-        JsonObject feature = new JsonObject();
-        feature.add("maxResults", new JsonPrimitive(5));
-        feature.add("type", new JsonPrimitive("LABEL_DETECTION"));
-        JsonArray features = new JsonArray();
-        features.add(feature);
-        request.add("features", features);
-
-        annotateImage(request.toString())
-                .addOnCompleteListener(new OnCompleteListener<JsonElement>() {
-                    @Override
-                    public void onComplete(@NonNull Task<JsonElement> task) {
-                        if (!task.isSuccessful()) {
-                            System.out.println("TASK FAILED");
-                        } else {
-                            for (JsonElement label : task.getResult().getAsJsonArray().get(0).getAsJsonObject().get("labelAnnotations").getAsJsonArray()) {
-                                JsonObject labelObj = label.getAsJsonObject();
-                                String text = labelObj.get("description").getAsString();
-                                String entityID = labelObj.get("mid").getAsString();
-                                float score = labelObj.get("score").getAsFloat();
-                                recognitions.add(new Recognition(text, score));
-                                Log.d("test", entityID + " " + score);
-                                System.out.println("Entity" + entityID + "--" + score);
-                            }
-
-                        }
-                    }
-                });
-        return recognitions;
-    }
-
-    private Task<JsonElement> annotateImage(String requestJson) {
-        return mFunctions
-                .getHttpsCallable("annotateImage")
-                .call(requestJson)
-                .continueWith(new Continuation<HttpsCallableResult, JsonElement>() {
-                    @Override
-                    public JsonElement then(@NonNull Task<HttpsCallableResult> task) {
-                        // This continuation runs on either success or failure, but if the task
-                        // has failed then getResult() will throw an Exception which will be
-                        // propagated down.
-                        return JsonParser.parseString(new Gson().toJson(task.getResult().getData()));
-                    }
-                });
-    }
-
-
-    private Bitmap scaleBitmapDown(Bitmap bitmap, int maxDimension) {
-        int originalWidth = bitmap.getWidth();
-        int originalHeight = bitmap.getHeight();
-        int resizedWidth = maxDimension;
-        int resizedHeight = maxDimension;
-
-        if (originalHeight > originalWidth) {
-            resizedHeight = maxDimension;
-            resizedWidth = (int) (resizedHeight * (float) originalWidth / (float) originalHeight);
-        } else if (originalWidth > originalHeight) {
-            resizedWidth = maxDimension;
-            resizedHeight = (int) (resizedWidth * (float) originalHeight / (float) originalWidth);
-        } else if (originalHeight == originalWidth) {
-            resizedHeight = maxDimension;
-            resizedWidth = maxDimension;
-        }
-        return Bitmap.createScaledBitmap(bitmap, resizedWidth, resizedHeight, false);
+    private FirebaseImageClassifier(Context context, FirebaseCloudVisionTransport functions, @Nullable Classifier fallback) {
+        this(context, new ResilientCloudVisionTransport(functions, RetryPolicy.DEFAULT,
+                new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS), CALL_DEADLINE_MILLIS),
+                functions.getMaxBatchSize(), fallback);
     }
 
-    class Recognition{
-        private String name;
-        private float confidence;
+    //batches are only as large as the cloud function can answer in one call
+    private FirebaseImageClassifier(Context context, ResilientCloudVisionTransport transport, int maxBatchSize, @Nullable Classifier fallback) {
+        this(context, new CloudVisionBatcher(transport, BATCH_WINDOW_MILLIS, maxBatchSize),
+                transport, transport.getBreaker(), fallback);
+    }
 
-        public Recognition(String name, float confidence) {
-            this.name = name;
-            this.confidence = confidence;
-        }
+    //the batcher, and its transport, stay owned by the caller
+    public FirebaseImageClassifier(Context context, CloudVisionBatcher batcher, @Nullable CircuitBreaker breaker, @Nullable Classifier fallback) {
+        this(context, batcher, null, breaker, fallback);
+    }
 
-        public String getName() {
-            return name;
-        }
+    private FirebaseImageClassifier(Context context, CloudVisionBatcher batcher, @Nullable ResilientCloudVisionTransport ownedTransport,
+                                    @Nullable CircuitBreaker breaker, @Nullable Classifier fallback) {
+        //Cloud Vision has its own vocabulary, only the category lists are needed to map it
+        categoryIndex = ClassifierModel.loadCategoryIndex(context, Collections.<String>emptyList());
+        this.batcher = batcher;
+        this.ownedTransport = ownedTransport;
+        this.breaker = breaker;
+        this.fallback = fallback;
+    }
 
-        public void setName(String name) {
-            this.name = name;
-        }
+    @Override
+    public String getName() {
+        return NAME;
+    }
 
-        public float getConfidence() {
-            return confidence;
-        }
+    @Override
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
 
-        public void setConfidence(float confidence) {
-            this.confidence = confidence;
-        }
+    public CloudImageEncoder getEncoder() {
+        return encoder;
+    }
+
+    public CloudVisionBatcher getBatcher() {
+        return batcher;
+    }
+
+    //retry and deadline counters of the transport this classifier created, null if given a batcher
+    @Nullable
+    public ResilientCloudVisionTransport getTransport() {
+        return ownedTransport;
+    }
+
+    @Nullable
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
 
-        @Override
-        public String toString() {
-            return "Recognition {" + "name=" + name + ", confidence=" + confidence + '}';
+    //requests the cloud could not take are kept there and sent once it can
+    public void setOfflineQueue(@Nullable OfflineCloudQueue offlineQueue) {
+        this.offlineQueue = offlineQueue;
+    }
+
+    //without it, or when it has no id for a bitmap, queued requests get a random one
+    public void setRecordIds(@Nullable RecordIds recordIds) {
+        this.recordIds = recordIds;
+    }
+
+    //requests answered by the fallback because the cloud was unavailable
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+
+    @Override
+    public Task<Classification> classify(final Bitmap bitmap, final ImageOrientation orientation, @Nullable final CancellationToken cancellationToken) {
+        //asked now, while the caller still knows which photo this bitmap is
+        final String recordId = recordIdFor(bitmap);
+        //no point calling a service that is known to be down, the image is only encoded to keep it for later
+        if (breaker != null && breaker.isRejecting()) {
+            if (offlineQueue != null)
+                offlineQueue.enqueue(recordId, buildRequest(bitmap, orientation));
+            if (fallback == null)
+                return Tasks.forException(new CircuitOpenException("Cloud Vision circuit is open: " + breaker));
+            fallbacks.incrementAndGet();
+            return fallback.classify(bitmap, orientation, cancellationToken);
         }
+        final TaskCompletionSource<Classification> source = Classifiers.newSource(cancellationToken);
+        final long start = System.nanoTime();
+        final Map<String, Object> request = buildRequest(bitmap, orientation);
+
+        //shares one call with whatever else is requested within the batch window
+        batcher.submit(request, new CloudVisionBatcher.Callback() {
+            @Override
+            public void onResponse(Map<String, Object> response) {
+                long latency = System.nanoTime() - start;
+                latencyStats.record(latency);
+                source.trySetResult(toClassification(response, latency));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                //the service is unreachable or overloaded rather than rejecting this image
+                boolean unavailable = RetryPolicy.DEFAULT.isRetryable(e);
+                if (unavailable && offlineQueue != null)
+                    offlineQueue.enqueue(recordId, request);
+                if (fallback != null && unavailable && !source.getTask().isComplete()) {
+                    fallbacks.incrementAndGet();
+                    Classifiers.forward(fallback.classify(bitmap, orientation, cancellationToken), source);
+                } else {
+                    source.trySetException(e);
+                }
+            }
+        });
+        return source.getTask();
+    }
 
+    //also for answers that come back through the offline queue
+    public Classification toClassification(Map<String, Object> response, long latencyNanos) {
+        List<Recognition> recognitions = CloudVisionDecoder.toRecognitions(CloudVisionDecoder.decodeLabels(response));
+        return Classification.fromLabels(NAME, recognitions, categoryIndex, latencyNanos);
     }
 
-}
+    private String recordIdFor(Bitmap bitmap) {
+        RecordIds ids = recordIds;
+        String recordId = ids != null ? ids.recordIdFor(bitmap) : null;
+        return recordId != null ? recordId : UUID.randomUUID().toString();
+    }
 
+    private Map<String, Object> buildRequest(Bitmap bitmap, ImageOrientation orientation) {
+        //classify may be called from the engines' threads, the encoder reuses its buffers
+        synchronized (encoder) {
+            return encoder.buildLabelRequest(bitmap, orientation, 5);
+        }
+    }
 
+    @Override
+    public void close() {
+        if (ownedTransport != null) {
+            batcher.close();
+            ownedTransport.close();
+        }
+    }
 
+}
@@ -0,0 +1,38 @@
+package com.example.garbageclassifier;
+
+//Frames per second over the last few frames, so the number follows the sustained rate rather
+//than a single fast or slow frame. Thread safe.
+public class FrameRateMeter {
+
+    private final long[] timestamps;
+    private int count;
+    private int next;
+
+    public FrameRateMeter(int window) {
+        timestamps = new long[Math.max(2, window)];
+    }
+
+    public synchronized void tick() {
+        tick(System.nanoTime());
+    }
+
+    synchronized void tick(long nanos) {
+        timestamps[next] = nanos;
+        next = (next + 1) % timestamps.length;
+        if (count < timestamps.length)
+            count++;
+    }
+
+    public synchronized double getFramesPerSecond() {
+        if (count < 2)
+            return 0;
+        long newest = timestamps[(next - 1 + timestamps.length) % timestamps.length];
+        long oldest = timestamps[(next - count + timestamps.length) % timestamps.length];
+        return newest == oldest ? 0 : (count - 1) * 1e9 / (newest - oldest);
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        next = 0;
+    }
+}
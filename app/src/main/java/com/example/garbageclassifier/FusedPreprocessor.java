@@ -0,0 +1,206 @@
+package com.example.garbageclassifier;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+//Center crop, resize, 90 degree rotation and mirroring fused into one loop that writes uint8 RGB straight
+//into a persistent input buffer. Only the source rows that are actually sampled are read,
+//and no intermediate bitmap or tensor is created. Not thread safe, use one per interpreter.
+public class FusedPreprocessor {
+
+    public enum Sampling { NEAREST, BILINEAR }
+
+    private static final int WEIGHT_BITS = 8;
+    private static final int WEIGHT_ONE = 1 << WEIGHT_BITS;
+
+    private final int outputWidth, outputHeight;
+    private final ByteBuffer inputBuffer;
+    private Sampling sampling;
+
+    //scratch reused across calls, the row buffers only grow
+    private int[] upperRow = new int[0];
+    private int[] lowerRow = new int[0];
+    private int upperRowY, lowerRowY;
+    private final int[] leftColumn, rightColumn, columnWeight;
+
+    public FusedPreprocessor(int outputWidth, int outputHeight, Sampling sampling) {
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+        this.sampling = sampling;
+        inputBuffer = ByteBuffer.allocateDirect(outputWidth * outputHeight * 3).order(ByteOrder.nativeOrder());
+        int maxSide = Math.max(outputWidth, outputHeight);
+        leftColumn = new int[maxSide];
+        rightColumn = new int[maxSide];
+        columnWeight = new int[maxSide];
+    }
+
+    public int getOutputWidth() {
+        return outputWidth;
+    }
+
+    public int getOutputHeight() {
+        return outputHeight;
+    }
+
+    public Sampling getSampling() {
+        return sampling;
+    }
+
+    public void setSampling(Sampling sampling) {
+        this.sampling = sampling;
+    }
+
+    //the persistent buffer that process(source, rotations) fills
+    public ByteBuffer getBuffer() {
+        return inputBuffer;
+    }
+
+    public ByteBuffer process(PixelRowSource source, int rotations) {
+        return process(source, rotations, false);
+    }
+
+    public ByteBuffer process(PixelRowSource source, ImageOrientation orientation) {
+        return process(source, orientation.getQuarterTurns(), orientation.isMirrored());
+    }
+
+    public ByteBuffer process(PixelRowSource source, int rotations, boolean mirrored) {
+        process(source, rotations, mirrored, inputBuffer, 0);
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    public void process(PixelRowSource source, int rotations, ByteBuffer out, int offset) {
+        process(source, rotations, false, out, offset);
+    }
+
+    //rotations are counter-clockwise quarter turns, like Rot90Op, and `mirrored` flips the rotated
+    //image horizontally. Writes outputWidth * outputHeight * 3 bytes at `offset` using absolute puts,
+    //so the position of `out` is left alone.
+    public void process(PixelRowSource source, int rotations, boolean mirrored, ByteBuffer out, int offset) {
+        int quarterTurns = ((rotations % 4) + 4) % 4;
+        //size of the resized image before it is rotated into the output
+        int width = quarterTurns % 2 == 0 ? outputWidth : outputHeight;
+        int height = quarterTurns % 2 == 0 ? outputHeight : outputWidth;
+
+        //largest centered crop with the same aspect ratio as the output
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        float scale = Math.min(sourceWidth / (float) width, sourceHeight / (float) height);
+        int cropWidth = Math.max(1, Math.min(sourceWidth, Math.round(width * scale)));
+        int cropHeight = Math.max(1, Math.min(sourceHeight, Math.round(height * scale)));
+        int cropX = (sourceWidth - cropWidth) / 2;
+        int cropY = (sourceHeight - cropHeight) / 2;
+        float scaleX = cropWidth / (float) width;
+        float scaleY = cropHeight / (float) height;
+        boolean bilinear = sampling == Sampling.BILINEAR;
+
+        if (upperRow.length < cropWidth) {
+            upperRow = new int[cropWidth];
+            lowerRow = new int[cropWidth];
+        }
+        upperRowY = -1;
+        lowerRowY = -1;
+
+        for (int x = 0; x < width; x++) {
+            if (bilinear) {
+                float sourceX = Math.max(0f, (x + 0.5f) * scaleX - 0.5f);
+                int left = Math.min((int) sourceX, cropWidth - 1);
+                leftColumn[x] = left;
+                rightColumn[x] = Math.min(left + 1, cropWidth - 1);
+                columnWeight[x] = (int) ((sourceX - left) * WEIGHT_ONE);
+            } else {
+                leftColumn[x] = Math.min((int) ((x + 0.5f) * scaleX), cropWidth - 1);
+            }
+        }
+
+        //output byte offset of pixel (x, y) is origin + x * stepX + y * stepY, orientation is only this remap
+        int corner = outputOffset(quarterTurns, mirrored, 0, 0, width, height);
+        int origin = offset + corner;
+        int stepX = outputOffset(quarterTurns, mirrored, 1, 0, width, height) - corner;
+        int stepY = outputOffset(quarterTurns, mirrored, 0, 1, width, height) - corner;
+
+        for (int y = 0; y < height; y++) {
+            int index = origin + y * stepY;
+            if (bilinear) {
+                float sourceY = Math.max(0f, (y + 0.5f) * scaleY - 0.5f);
+                int top = Math.min((int) sourceY, cropHeight - 1);
+                int bottom = Math.min(top + 1, cropHeight - 1);
+                int rowWeight = (int) ((sourceY - top) * WEIGHT_ONE);
+                loadRows(source, cropX, cropY + top, cropY + bottom, cropWidth);
+                int[] upper = upperRow;
+                int[] lower = top == bottom ? upperRow : lowerRow;
+                for (int x = 0; x < width; x++, index += stepX) {
+                    int left = leftColumn[x];
+                    int right = rightColumn[x];
+                    int weight = columnWeight[x];
+                    int topLeft = upper[left], topRight = upper[right];
+                    int bottomLeft = lower[left], bottomRight = lower[right];
+                    out.put(index, (byte) blend(topLeft >> 16, topRight >> 16, bottomLeft >> 16, bottomRight >> 16, weight, rowWeight));
+                    out.put(index + 1, (byte) blend(topLeft >> 8, topRight >> 8, bottomLeft >> 8, bottomRight >> 8, weight, rowWeight));
+                    out.put(index + 2, (byte) blend(topLeft, topRight, bottomLeft, bottomRight, weight, rowWeight));
+                }
+            } else {
+                int row = Math.min((int) ((y + 0.5f) * scaleY), cropHeight - 1);
+                loadRows(source, cropX, cropY + row, cropY + row, cropWidth);
+                for (int x = 0; x < width; x++, index += stepX) {
+                    int pixel = upperRow[leftColumn[x]];
+                    out.put(index, (byte) (pixel >> 16));
+                    out.put(index + 1, (byte) (pixel >> 8));
+                    out.put(index + 2, (byte) pixel);
+                }
+            }
+        }
+    }
+
+    //byte offset in the output of pixel (x, y) of the unrotated width x height image
+    private int outputOffset(int quarterTurns, boolean mirrored, int x, int y, int width, int height) {
+        int outX, outY;
+        switch (quarterTurns) {
+            case 1:
+                outX = y;
+                outY = width - 1 - x;
+                break;
+            case 2:
+                outX = width - 1 - x;
+                outY = height - 1 - y;
+                break;
+            case 3:
+                outX = height - 1 - y;
+                outY = x;
+                break;
+            default:
+                outX = x;
+                outY = y;
+        }
+        if (mirrored)
+            outX = outputWidth - 1 - outX;
+        return (outY * outputWidth + outX) * 3;
+    }
+
+    //keeps the last two source rows around, consecutive output rows usually share them.
+    //When both rows are the same only the upper one is loaded.
+    private void loadRows(PixelRowSource source, int x, int upperY, int lowerY, int width) {
+        if (upperRowY != upperY) {
+            if (lowerRowY == upperY) {
+                int[] swap = upperRow;
+                upperRow = lowerRow;
+                lowerRow = swap;
+                lowerRowY = upperRowY;
+                upperRowY = upperY;
+            } else {
+                source.getRow(upperRow, x, upperY, width);
+                upperRowY = upperY;
+            }
+        }
+        if (lowerY != upperY && lowerRowY != lowerY) {
+            source.getRow(lowerRow, x, lowerY, width);
+            lowerRowY = lowerY;
+        }
+    }
+
+    private static int blend(int topLeft, int topRight, int bottomLeft, int bottomRight, int weightX, int weightY) {
+        int top = (topLeft & 0xFF) * (WEIGHT_ONE - weightX) + (topRight & 0xFF) * weightX;
+        int bottom = (bottomLeft & 0xFF) * (WEIGHT_ONE - weightX) + (bottomRight & 0xFF) * weightX;
+        return (top * (WEIGHT_ONE - weightY) + bottom * weightY) >> (2 * WEIGHT_BITS);
+    }
+}
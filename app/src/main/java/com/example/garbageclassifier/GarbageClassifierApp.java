@@ -0,0 +1,39 @@
+package com.example.garbageclassifier;
+
+import android.app.Application;
+import android.content.Context;
+
+import java.io.File;
+
+//Owns the state that must outlive single activities, like the shared classifier
+public class GarbageClassifierApp extends Application {
+
+    //unsent cloud requests, kept small since each is an encoded image of up to 64 KiB
+    private static final int OFFLINE_QUEUE_ENTRIES = 100;
+    private static final long OFFLINE_QUEUE_BYTES = 8L * 1024 * 1024;
+
+    private ClassifierHolder classifierHolder;
+    private OfflineCloudQueue offlineQueue;
+    private final CaptureLatency captureLatency = new CaptureLatency();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        classifierHolder = new ClassifierHolder(this);
+        registerComponentCallbacks(classifierHolder);
+        offlineQueue = new OfflineCloudQueue(new File(getFilesDir(), "cloud-queue"), OFFLINE_QUEUE_ENTRIES, OFFLINE_QUEUE_BYTES);
+    }
+
+    public static ClassifierHolder getClassifierHolder(Context context) {
+        return ((GarbageClassifierApp) context.getApplicationContext()).classifierHolder;
+    }
+
+    //one queue per process, its files are not safe to share between instances
+    public static OfflineCloudQueue getOfflineQueue(Context context) {
+        return ((GarbageClassifierApp) context.getApplicationContext()).offlineQueue;
+    }
+
+    public static CaptureLatency getCaptureLatency(Context context) {
+        return ((GarbageClassifierApp) context.getApplicationContext()).captureLatency;
+    }
+}
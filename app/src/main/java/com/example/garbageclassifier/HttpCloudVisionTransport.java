@@ -0,0 +1,72 @@
+package com.example.garbageclassifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Map;
+
+//Talks the callable function wire protocol over plain HTTP: POST {"data": payload} and read
+//{"result": ...} or {"error": ...}. Lets the batcher run against a local stand-in or the emulator.
+public class HttpCloudVisionTransport implements CloudVisionTransport {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final URL endpoint;
+    private final int timeoutMillis;
+
+    public HttpCloudVisionTransport(URL endpoint, int timeoutMillis) {
+        this.endpoint = endpoint;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> annotate(Map<String, Object> batchRequest) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+        try {
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            byte[] body = CloudVisionDecoder.GSON.toJson(Collections.singletonMap("data", batchRequest)).getBytes(UTF_8);
+            connection.setFixedLengthStreamingMode(body.length);
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+
+            int status = connection.getResponseCode();
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in == null)
+                throw new IOException("HTTP " + status + " from " + endpoint);
+            Map<String, Object> response;
+            Reader reader = new InputStreamReader(in, UTF_8);
+            try {
+                response = CloudVisionDecoder.GSON.fromJson(reader, Map.class);
+            } finally {
+                reader.close();
+            }
+            if (status >= 400 || response == null || response.containsKey("error")) {
+                //overload and server errors may go away on a retry, other client errors will not
+                boolean transientError = status == 429 || status >= 500;
+                throw new CloudVisionException("HTTP " + status + " from " + endpoint + ": "
+                        + (response == null ? null : response.get("error")), transientError);
+            }
+            Object result = response.get("result");
+            if (!(result instanceof Map))
+                throw new IOException("Unexpected result from " + endpoint + ": " + result);
+            return (Map<String, Object>) result;
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
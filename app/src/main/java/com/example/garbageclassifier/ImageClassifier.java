@@ -1,12 +1,15 @@
 package com.example.garbageclassifier;
 
 import android.app.Activity;
+import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.util.Log;
 
 import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.support.common.FileUtil;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
 import org.tensorflow.lite.support.common.TensorProcessor;
 import org.tensorflow.lite.support.common.ops.NormalizeOp;
 import org.tensorflow.lite.support.image.ImageProcessor;
@@ -14,16 +17,16 @@ import org.tensorflow.lite.support.image.TensorImage;
 import org.tensorflow.lite.support.image.ops.ResizeOp;
 import org.tensorflow.lite.support.image.ops.ResizeWithCropOrPadOp;
 import org.tensorflow.lite.support.image.ops.Rot90Op;
-import org.tensorflow.lite.support.label.TensorLabel;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,7 +36,14 @@ public class ImageClassifier {
     private static final float PROBABILITY_STD = 255.0f;
     private static final float IMAGE_MEAN = 0.0f;
     private static final float IMAGE_STD = 1.0f;
-    private static final int MAX_SIZE = 5;
+    static final int MAX_SIZE = 5;
+    private static final int IMAGE_TENSOR_INDEX = 0;
+    private static final int PROBABILITY_TENSOR_INDEX = 0;
+    private static final int MAX_BATCH_SIZE = 16;
+    private static final int TUNING_WARMUP_RUNS = 2;
+    private static final int TUNING_TIMED_RUNS = 5;
+    //rough interpreter arena per image relative to its input size, used to bound the batch size
+    private static final int ACTIVATION_BYTES_FACTOR = 8;
 
     private final List<String> labels;
     private final Interpreter tensorClassifier;
@@ -41,159 +51,477 @@ public class ImageClassifier {
     private final TensorBuffer probabilityImageBuffer;
     private final TensorProcessor probabilityProcessor;
     private TensorImage imageInputBuffer;
+    private final FusedPreprocessor preprocessor;
+    private final BitmapRowSource bitmapSource = new BitmapRowSource();
     private MappedByteBuffer classifierModel;
-    private List<String> plasticsList, papersList, metalsList, glassList;
-    private BufferedReader reader;
+    private final InferenceBackend backend;
+    private GpuDelegate gpuDelegate;
+    //public entry points are synchronized, so close() never frees the interpreter under a running invoke
+    private boolean closed;
+    private final CategoryIndex categoryIndex;
+
+    //raw uint8 post-processing, reused across calls
+    private final boolean quantizedOutput;
+    private final float outputScale;
+    private final int outputZeroPoint;
+    private final int[] categorySums = new int[CategoryIndex.CATEGORY_COUNT];
+    private TopKSelector topKSelector = new TopKSelector(MAX_SIZE);
+    private final Object[] inputs = new Object[1];
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    //time spent in each stage of single-image classification
+    private final LatencyStats preprocessStats = new LatencyStats(256);
+    private final LatencyStats inferenceStats = new LatencyStats(256);
+    private final LatencyStats mapStats = new LatencyStats(256);
+
+    //batched inference over the model's batch dimension
+    private final int[] inputShape;
+    private final int outputSize;
+    private Boolean dynamicBatchSupported;
+    private int currentBatchSize = 1;
+    private ByteBuffer batchInputBuffer, batchOutputBuffer;
+    private final Object[] batchInputs = new Object[1];
+    private final Map<Integer, Object> batchOutputs = new HashMap<>();
 
     public ImageClassifier(Activity activity) throws IOException {
-        classifierModel = FileUtil.loadMappedFile(activity, "mobilenet_v1_1.0_224_quant.tflite");
-        labels = FileUtil.loadLabels(activity, "labels_mobilenet_quant_v1_224.txt");
+        this(ClassifierModel.load(activity));
+    }
 
-        int imageTensorIndex = 0;
-        int probabilityTensorIndex = 0;
-        tensorClassifier = new Interpreter(classifierModel, null);
+    public ImageClassifier(ClassifierModel model) {
+        this(model, InferenceBackend.DEFAULT);
+    }
+
+    //every instance owns its interpreter and buffers, the model itself can be shared.
+    //If the backend's delegate fails to initialize the classifier falls back to the CPU default.
+    public ImageClassifier(ClassifierModel model, InferenceBackend requestedBackend) {
+        classifierModel = model.getModelBuffer();
+        labels = model.getLabels();
+        categoryIndex = model.getCategoryIndex();
+
+        int imageTensorIndex = IMAGE_TENSOR_INDEX;
+        int probabilityTensorIndex = PROBABILITY_TENSOR_INDEX;
+        Interpreter interpreter;
+        InferenceBackend usedBackend = requestedBackend;
+        try {
+            interpreter = createInterpreter(requestedBackend);
+        } catch (RuntimeException e) {
+            Log.d("ImageClassifier", "Backend " + requestedBackend + " failed, using " + InferenceBackend.DEFAULT + ": " + e);
+            closeDelegate();
+            usedBackend = InferenceBackend.DEFAULT;
+            interpreter = createInterpreter(usedBackend);
+        }
+        tensorClassifier = interpreter;
+        backend = usedBackend;
         int[] inputImageShape = tensorClassifier.getInputTensor(imageTensorIndex).shape();
         DataType inputDataType = tensorClassifier.getInputTensor(imageTensorIndex).dataType();
         int[] outputImageShape = tensorClassifier.getOutputTensor(probabilityTensorIndex).shape();
         DataType outputDataType = tensorClassifier.getOutputTensor(probabilityTensorIndex).dataType();
 
         //assign variables
+        inputShape = inputImageShape;
+        outputSize = outputImageShape[outputImageShape.length - 1];
         imageResizeX = inputImageShape[1];
         imageResizeY = inputImageShape[2];
         imageInputBuffer = new TensorImage(inputDataType);
+        //quantized models take raw uint8 RGB, so crop/resize/rotate can write the input tensor directly
+        preprocessor = inputDataType == DataType.UINT8
+                ? new FusedPreprocessor(inputImageShape[2], inputImageShape[1], FusedPreprocessor.Sampling.NEAREST)
+                : null;
         probabilityImageBuffer = TensorBuffer.createFixedSize(outputImageShape, outputDataType);
         probabilityProcessor = new TensorProcessor.Builder().add(new NormalizeOp(PROBABILITY_MEAN, PROBABILITY_STD)).build();
+        outputs.put(probabilityTensorIndex, probabilityImageBuffer.getBuffer());
 
-        //create lists
-        plasticsList = new ArrayList<>();
-        papersList = new ArrayList<>();
-        metalsList = new ArrayList<>();
-        glassList = new ArrayList<>();
+        //dequantize with the tensor's own params, fall back to the 0..255 range used by NormalizeOp
+        Tensor.QuantizationParams outputQuantization = tensorClassifier.getOutputTensor(probabilityTensorIndex).quantizationParams();
+        quantizedOutput = outputDataType == DataType.UINT8;
+        outputScale = outputQuantization.getScale() != 0f ? outputQuantization.getScale() : 1f / PROBABILITY_STD;
+        outputZeroPoint = outputQuantization.getZeroPoint();
+    }
 
-        try {
-            final InputStream file = activity.getAssets().open("plastics.txt");
-            reader = new BufferedReader(new InputStreamReader(file));
-            String line = reader.readLine();
-            while (line != null) {
-                line = reader.readLine();
-                plasticsList.add(line);
-            }
-            file.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    //output list is list of objects and the confidence
+    //one row per waste category (aggregated) followed by the top labels that have no category
+    public List<Recognition> recognizeImage(final Bitmap bitmap, final int sensorOrientation) {
+        return toRecognitions(classifyImage(bitmap, sensorOrientation));
+    }
 
-        try {
-            final InputStream file = activity.getAssets().open("papers.txt");
-            reader = new BufferedReader(new InputStreamReader(file));
-            String line = reader.readLine();
-            while (line != null) {
-                line = reader.readLine();
-                papersList.add(line);
-            }
-            file.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    public List<List<Recognition>> recognizeImages(final List<Bitmap> bitmaps, final int sensorOrientation) {
+        List<List<Recognition>> recognitions = new ArrayList<>();
+        for (ClassificationResult result : classifyImages(bitmaps, sensorOrientation)) {
+            recognitions.add(toRecognitions(result));
         }
+        return recognitions;
+    }
 
-        try {
-            final InputStream file = activity.getAssets().open("metals.txt");
-            reader = new BufferedReader(new InputStreamReader(file));
-            String line = reader.readLine();
-            while (line != null) {
-                line = reader.readLine();
-                metalsList.add(line);
-            }
-            file.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    //immutable snapshot of a result for the Classifier interface
+    public Classification toClassification(String engine, ClassificationResult result, long latencyNanos) {
+        return new Classification(engine, toRecognitions(result), result.getCategoryScores(), latencyNanos);
+    }
+
+    private List<Recognition> toRecognitions(ClassificationResult result) {
+        List<Recognition> recognitions = new ArrayList<>();
+        for (int c = 0; c < CategoryIndex.CATEGORY_COUNT; c++) {
+            if (result.getCategoryScore(c) > 0f)
+                recognitions.add(new Recognition(CategoryIndex.CATEGORY_NAMES[c], result.getCategoryScore(c)));
         }
+        for (int i = 0; i < result.getTopLabelCount(); i++) {
+            if (categoryIndex.categoryOf(result.getTopLabelIndex(i)) == CategoryIndex.NO_CATEGORY)
+                recognitions.add(new Recognition(result.getTopLabel(i), result.getTopConfidence(i)));
+        }
+        Collections.sort(recognitions); //sort based on confidence
+        return recognitions;
+    }
 
-        try {
-            final InputStream file = activity.getAssets().open("glass.txt");
-            reader = new BufferedReader(new InputStreamReader(file));
-            String line = reader.readLine();
-            while (line != null) {
-                line = reader.readLine();
-                glassList.add(line);
-            }
-            file.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+    public ClassificationResult classifyImage(final Bitmap bitmap, final int sensorOrientation) {
+        ClassificationResult result = new ClassificationResult(MAX_SIZE);
+        classifyImage(bitmap, sensorOrientation, result);
+        return result;
+    }
+
+    //top-K mode: fills a caller-owned result, K is the result's capacity.
+    //For the quantized model the post-processing allocates nothing once warmed up.
+    public void classifyImage(final Bitmap bitmap, final int sensorOrientation, ClassificationResult result) {
+        classifyImage(bitmap, new ImageOrientation(sensorOrientation / 90, false), result);
+    }
+
+    //the orientation is an index remap inside the preprocessing loop, the bitmap itself is never rotated
+    public synchronized void classifyImage(final Bitmap bitmap, final ImageOrientation orientation, ClassificationResult result) {
+        if (closed)
+            throw new IllegalStateException("ImageClassifier is closed");
+        long start = System.nanoTime();
+        if (preprocessor != null) {
+            inputs[0] = preprocessor.process(bitmapSource.setBitmap(bitmap), orientation);
+            bitmapSource.setBitmap(null);
+        } else {
+            imageInputBuffer = loadImage(bitmap, orientation.getQuarterTurns());
+            inputs[0] = imageInputBuffer.getBuffer();
         }
+        long preprocessed = System.nanoTime();
+        preprocessStats.record(preprocessed - start);
+        resizeBatch(1);
+        probabilityImageBuffer.getBuffer().rewind();
+        tensorClassifier.runForMultipleInputsOutputs(inputs, outputs);
+        long inferred = System.nanoTime();
+        inferenceStats.record(inferred - preprocessed);
 
-        System.out.println(plasticsList.toString());
+        result.reset(labels);
+        if (quantizedOutput)
+            selectQuantized(probabilityImageBuffer.getBuffer(), 0, result);
+        else
+            selectDequantized(probabilityProcessor.process(probabilityImageBuffer).getFloatArray(), result);
+        mapStats.record(System.nanoTime() - inferred);
     }
 
-    //output list is list of objects and the confidence
-    public List<Recognition> recognizeImage(final Bitmap bitmap, final int sensorOrientation) {
-        List<Recognition> recognitions = new ArrayList<>();
-        imageInputBuffer = loadImage(bitmap, sensorOrientation);
-        tensorClassifier.run(imageInputBuffer.getBuffer(), probabilityImageBuffer.getBuffer().rewind());
-        Map<String, Float> labelledProbability = new TensorLabel(labels, probabilityProcessor.process(probabilityImageBuffer)).getMapWithFloatValue();
-        for (Map.Entry<String, Float> entry : labelledProbability.entrySet()) {
-            String key = entry.getKey();
-            Float confidence = entry.getValue();
-            if (plasticsList.contains(key))
-                key = "plastic";
-            else if (papersList.contains(key))
-                key = "paper";
-            else if (metalsList.contains(key))
-                key = "metal";
-            else if (glassList.contains(key))
-                key = "glass";
-            recognitions.add(new Recognition(key, confidence));
+    public LatencyStats getPreprocessStats() {
+        return preprocessStats;
+    }
+
+    public LatencyStats getInferenceStats() {
+        return inferenceStats;
+    }
+
+    //top-K selection and folding the labels into waste categories
+    public LatencyStats getMapStats() {
+        return mapStats;
+    }
+
+    //true when inputs can be preprocessed outside the classifier, see newInputPreprocessor
+    public boolean supportsDirectInput() {
+        return preprocessor != null;
+    }
+
+    //a preprocessor with its own buffer shaped like this model's input, so callers can fill the
+    //next input while the interpreter is still busy with the previous one
+    public FusedPreprocessor newInputPreprocessor() {
+        if (preprocessor == null)
+            throw new UnsupportedOperationException("Direct input needs the quantized model");
+        return new FusedPreprocessor(preprocessor.getOutputWidth(), preprocessor.getOutputHeight(), preprocessor.getSampling());
+    }
+
+    //classifies an input that a preprocessor from newInputPreprocessor already filled
+    public synchronized void classifyInput(ByteBuffer input, ClassificationResult result) {
+        if (closed)
+            throw new IllegalStateException("ImageClassifier is closed");
+        if (preprocessor == null)
+            throw new UnsupportedOperationException("Direct input needs the quantized model");
+        input.rewind();
+        inputs[0] = input;
+        resizeBatch(1);
+        probabilityImageBuffer.getBuffer().rewind();
+        tensorClassifier.runForMultipleInputsOutputs(inputs, outputs);
+
+        result.reset(labels);
+        if (quantizedOutput)
+            selectQuantized(probabilityImageBuffer.getBuffer(), 0, result);
+        else
+            selectDequantized(probabilityProcessor.process(probabilityImageBuffer).getFloatArray(), result);
+    }
+
+    //scans the raw uint8 scores once, summing categories and keeping the K best in a primitive heap,
+    //only the winners are dequantized
+    private void selectQuantized(ByteBuffer scores, int offset, ClassificationResult result) {
+        if (topKSelector.capacity() < result.getCapacity())
+            topKSelector = new TopKSelector(result.getCapacity());
+        topKSelector.reset(result.getCapacity());
+        for (int c = 0; c < categorySums.length; c++) {
+            categorySums[c] = 0;
         }
-        Collections.sort(recognitions); //sort based on confidence
-        return recognitions;
+
+        int count = Math.min(outputSize, categoryIndex.size());
+        for (int i = 0; i < count; i++) {
+            int value = scores.get(offset + i) & 0xFF;
+            int category = categoryIndex.categoryOf(i);
+            if (category != CategoryIndex.NO_CATEGORY)
+                categorySums[category] += value;
+            topKSelector.offer(i, value);
+        }
+        topKSelector.sortDescending();
+
+        float[] categoryScores = result.getCategoryScores();
+        for (int c = 0; c < categorySums.length; c++) {
+            categoryScores[c] = (categorySums[c] - categoryIndex.labelCount(c) * outputZeroPoint) * outputScale;
+        }
+        for (int rank = 0; rank < topKSelector.size(); rank++) {
+            result.setTopLabel(rank, topKSelector.indexAt(rank), (topKSelector.valueAt(rank) - outputZeroPoint) * outputScale);
+        }
+        result.setTopLabelCount(topKSelector.size());
     }
 
-    private TensorImage loadImage(Bitmap bitmap, int sensorOrientation) {
-        imageInputBuffer.load(bitmap);
-        //int rotations = sensorOrientation / 90;
-        int cropSize = Math.min(bitmap.getWidth(), bitmap.getHeight());
-        ImageProcessor imageProcessor = new ImageProcessor.Builder()
-                .add(new ResizeWithCropOrPadOp(cropSize, cropSize))
-                .add(new ResizeOp(imageResizeX, imageResizeY, ResizeOp.ResizeMethod.NEAREST_NEIGHBOR))
-                .add(new Rot90Op(sensorOrientation))
-                .add(new NormalizeOp(IMAGE_MEAN, IMAGE_STD))
-                .build();
-        return imageProcessor.process(imageInputBuffer);
+    //float models: category sums and top labels together, no string lookups
+    private void selectDequantized(float[] probabilities, ClassificationResult result) {
+        float[] categoryScores = result.getCategoryScores();
+        for (int i = 0; i < probabilities.length; i++) {
+            int category = categoryIndex.categoryOf(i);
+            if (category != CategoryIndex.NO_CATEGORY)
+                categoryScores[category] += probabilities[i];
+            result.offerLabel(i, probabilities[i]);
+        }
     }
 
-    class Recognition implements Comparable{
-        private String name;
-        private float confidence;
+    //Classifies all bitmaps with as few interpreter invokes as possible: the input is resized to
+    //[N, h, w, 3], filled by the fused preprocessor and run once per chunk. Models without a
+    //dynamic batch dimension (see supportsDynamicBatch) fall back to one run per image.
+    public synchronized List<ClassificationResult> classifyImages(final List<Bitmap> bitmaps, final int sensorOrientation) {
+        if (closed)
+            throw new IllegalStateException("ImageClassifier is closed");
+        List<ClassificationResult> results = new ArrayList<>(bitmaps.size());
+        if (!supportsDynamicBatch()) {
+            for (Bitmap bitmap : bitmaps) {
+                results.add(classifyImage(bitmap, sensorOrientation));
+            }
+            return results;
+        }
+        int maxBatch = getMaxBatchSize();
+        for (int start = 0; start < bitmaps.size(); start += maxBatch) {
+            int end = Math.min(bitmaps.size(), start + maxBatch);
+            runBatch(bitmaps.subList(start, end), sensorOrientation, results);
+        }
+        return results;
+    }
 
-        public Recognition(String name, float confidence) {
-            this.name = name;
-            this.confidence = confidence;
+    //true when the model accepts a batch size other than 1, probed once by resizing the input
+    public synchronized boolean supportsDynamicBatch() {
+        if (dynamicBatchSupported == null) {
+            if (preprocessor == null || !quantizedOutput) {
+                dynamicBatchSupported = false;
+            } else {
+                try {
+                    resizeBatch(2);
+                    dynamicBatchSupported = true;
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    Log.d("ImageClassifier", "Model has a fixed batch size: " + e.getMessage());
+                    dynamicBatchSupported = false;
+                } finally {
+                    resizeBatch(1);
+                }
+            }
         }
+        return dynamicBatchSupported;
+    }
+
+    //how many images fit in one batch given the heap that is currently free
+    public int getMaxBatchSize() {
+        if (!supportsDynamicBatch())
+            return 1;
+        Runtime runtime = Runtime.getRuntime();
+        long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        long perImage = (long) preprocessor.getBuffer().capacity() * ACTIVATION_BYTES_FACTOR + outputSize;
+        long fits = available / 4 / perImage;
+        return (int) Math.max(1, Math.min(MAX_BATCH_SIZE, fits));
+    }
+
+    private void runBatch(List<Bitmap> bitmaps, int sensorOrientation, List<ClassificationResult> results) {
+        int size = bitmaps.size();
+        int frameBytes = preprocessor.getBuffer().capacity();
+        //the interpreter wants buffers of exactly the tensor size, so hand it views of the shared ones
+        batchInputBuffer = ensureCapacity(batchInputBuffer, size * frameBytes);
+        batchOutputBuffer = ensureCapacity(batchOutputBuffer, size * outputSize);
+        ByteBuffer input = view(batchInputBuffer, size * frameBytes);
+        ByteBuffer output = view(batchOutputBuffer, size * outputSize);
 
-        public String getName() {
-            return name;
+        for (int i = 0; i < size; i++) {
+            preprocessor.process(bitmapSource.setBitmap(bitmaps.get(i)), sensorOrientation / 90, input, i * frameBytes);
         }
+        bitmapSource.setBitmap(null);
 
-        public void setName(String name) {
-            this.name = name;
+        resizeBatch(size);
+        batchInputs[0] = input;
+        batchOutputs.put(PROBABILITY_TENSOR_INDEX, output);
+        tensorClassifier.runForMultipleInputsOutputs(batchInputs, batchOutputs);
+
+        for (int i = 0; i < size; i++) {
+            ClassificationResult result = new ClassificationResult(MAX_SIZE);
+            result.reset(labels);
+            selectQuantized(output, i * outputSize, result);
+            results.add(result);
         }
+    }
+
+    private void resizeBatch(int batchSize) {
+        if (batchSize == currentBatchSize)
+            return;
+        //if the resize fails halfway the next call must resize again
+        currentBatchSize = -1;
+        int[] shape = inputShape.clone();
+        shape[0] = batchSize;
+        tensorClassifier.resizeInput(IMAGE_TENSOR_INDEX, shape);
+        tensorClassifier.allocateTensors();
+        if (tensorClassifier.getOutputTensor(PROBABILITY_TENSOR_INDEX).shape()[0] != batchSize)
+            throw new IllegalStateException("Output does not follow the input batch size " + batchSize);
+        currentBatchSize = batchSize;
+    }
+
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int bytes) {
+        if (buffer == null || buffer.capacity() < bytes)
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        return buffer;
+    }
 
-        public float getConfidence() {
-            return confidence;
+    private static ByteBuffer view(ByteBuffer buffer, int bytes) {
+        ByteBuffer view = buffer.duplicate();
+        view.clear();
+        view.limit(bytes);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private Interpreter createInterpreter(InferenceBackend config) {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(config.getNumThreads());
+        switch (config.getType()) {
+            case XNNPACK:
+                options.setUseXNNPACK(true);
+                break;
+            case NNAPI:
+                options.setUseNNAPI(true);
+                break;
+            case GPU:
+                CompatibilityList compatibilityList = new CompatibilityList();
+                if (!compatibilityList.isDelegateSupportedOnThisDevice())
+                    throw new UnsupportedOperationException("GPU delegate is not supported on this device");
+                gpuDelegate = new GpuDelegate(compatibilityList.getBestOptionsForThisDevice());
+                options.addDelegate(gpuDelegate);
+                break;
+            default:
+                options.setUseXNNPACK(false);
         }
+        Interpreter interpreter = new Interpreter(classifierModel, options);
+        //delegates may defer their failures to the first allocation, surface them here
+        interpreter.allocateTensors();
+        return interpreter;
+    }
 
-        public void setConfidence(float confidence) {
-            this.confidence = confidence;
+    //the backend that is actually in use, DEFAULT if the requested one failed
+    public InferenceBackend getBackend() {
+        return backend;
+    }
+
+    //one invoke on a blank input so the first real classification does not pay for lazy allocation
+    public synchronized void warmUp() {
+        resizeBatch(1);
+        if (preprocessor != null) {
+            inputs[0] = preprocessor.getBuffer();
+        } else {
+            Tensor input = tensorClassifier.getInputTensor(IMAGE_TENSOR_INDEX);
+            inputs[0] = ByteBuffer.allocateDirect(input.numBytes()).order(ByteOrder.nativeOrder());
         }
+        probabilityImageBuffer.getBuffer().rewind();
+        tensorClassifier.runForMultipleInputsOutputs(inputs, outputs);
+    }
 
-        @Override
-        public String toString() {
-            return "Recognition {" + "name=" + name + ", confidence=" + confidence + '}';
+    //median time of `runs` invokes on whatever is in the input buffer, after `warmups` discarded ones
+    public synchronized long measureInvokeNanos(int warmups, int runs) {
+        if (preprocessor == null)
+            throw new UnsupportedOperationException("Benchmarking needs the quantized input path");
+        resizeBatch(1);
+        inputs[0] = preprocessor.getBuffer();
+        for (int i = 0; i < warmups; i++) {
+            probabilityImageBuffer.getBuffer().rewind();
+            tensorClassifier.runForMultipleInputsOutputs(inputs, outputs);
+        }
+        long[] times = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            probabilityImageBuffer.getBuffer().rewind();
+            long start = System.nanoTime();
+            tensorClassifier.runForMultipleInputsOutputs(inputs, outputs);
+            times[i] = System.nanoTime() - start;
         }
+        Arrays.sort(times);
+        return times[runs / 2];
+    }
+
+    //classifier on the fastest backend for this device, tuned on first run and remembered after
+    public static ImageClassifier createTuned(Context context, final ClassifierModel model) {
+        BackendTuner tuner = new BackendTuner(new BackendTuner.Benchmark() {
+            @Override
+            public long measureNanos(InferenceBackend backend) {
+                ImageClassifier candidate = new ImageClassifier(model, backend);
+                try {
+                    if (!candidate.getBackend().equals(backend))
+                        throw new UnsupportedOperationException("fell back to " + candidate.getBackend());
+                    return candidate.measureInvokeNanos(TUNING_WARMUP_RUNS, TUNING_TIMED_RUNS);
+                } finally {
+                    candidate.close();
+                }
+            }
+        }, new BackendPreferences(context), BackendPreferences.deviceKey(ClassifierModel.MODEL_FILE));
+
+        InferenceBackend selected = tuner.select(InferenceBackend.candidates(Runtime.getRuntime().availableProcessors(), true));
+        Log.d("ImageClassifier", "Backend " + selected + " timings " + tuner.getMeasurements() + ", unavailable " + tuner.getFailures());
+        ImageClassifier classifier = new ImageClassifier(model, selected);
+        if (!classifier.getBackend().equals(selected))
+            tuner.invalidate();
+        return classifier;
+    }
+
+    public synchronized void close() {
+        if (closed)
+            return;
+        closed = true;
+        tensorClassifier.close();
+        closeDelegate();
+    }
 
-        @Override
-        public int compareTo(Object o) {
-            return Float.compare(((Recognition) o).confidence, this.confidence);
+    private void closeDelegate() {
+        if (gpuDelegate != null) {
+            gpuDelegate.close();
+            gpuDelegate = null;
         }
     }
+
+    //nearest is the cheapest, bilinear is closer to what the model was trained on
+    public void setSampling(FusedPreprocessor.Sampling sampling) {
+        if (preprocessor != null)
+            preprocessor.setSampling(sampling);
+    }
+
+    //fallback for float models that need NormalizeOp, which cannot mirror
+    private TensorImage loadImage(Bitmap bitmap, int rotations) {
+        imageInputBuffer.load(bitmap);
+        int cropSize = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        ImageProcessor imageProcessor = new ImageProcessor.Builder()
+                .add(new ResizeWithCropOrPadOp(cropSize, cropSize))
+                .add(new ResizeOp(imageResizeX, imageResizeY, ResizeOp.ResizeMethod.NEAREST_NEIGHBOR))
+                .add(new Rot90Op(rotations))
+                .add(new NormalizeOp(IMAGE_MEAN, IMAGE_STD))
+                .build();
+        return imageProcessor.process(imageInputBuffer);
+    }
 }
@@ -0,0 +1,109 @@
+package com.example.garbageclassifier;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+//N ImageClassifiers over one memory-mapped model, each with its own interpreter and buffers.
+//Callers borrow an idle classifier, so up to N inferences run at the same time.
+public class ImageClassifierPool {
+
+    private final ResourcePool<ImageClassifier> classifiers;
+    private final ExecutorService executor;
+    private final LatencyStats waitStats = new LatencyStats(256);
+
+    public ImageClassifierPool(Context context, int poolSize) throws IOException {
+        this(ClassifierModel.load(context), poolSize);
+    }
+
+    public ImageClassifierPool(ClassifierModel model, int poolSize) {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("poolSize must be at least 1, was " + poolSize);
+        List<ImageClassifier> instances = new ArrayList<>();
+        for (int i = 0; i < poolSize; i++) {
+            instances.add(new ImageClassifier(model));
+        }
+        classifiers = new ResourcePool<>(instances);
+        executor = Executors.newFixedThreadPool(poolSize);
+    }
+
+    //one interpreter per two cores leaves room for the UI and camera threads
+    public static int defaultPoolSize() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public int getPoolSize() {
+        return classifiers.size();
+    }
+
+    //callers currently blocked waiting for a free interpreter
+    public int getQueuedCount() {
+        return classifiers.getWaitingCount();
+    }
+
+    public LatencyStats getWaitStats() {
+        return waitStats;
+    }
+
+    public ClassificationResult recognize(Bitmap bitmap, int sensorOrientation) throws InterruptedException {
+        ClassificationResult result = new ClassificationResult(ImageClassifier.MAX_SIZE);
+        recognize(bitmap, sensorOrientation, result);
+        return result;
+    }
+
+    //fails with IllegalStateException once the pool is closed, also while waiting for an interpreter
+    public void recognize(Bitmap bitmap, int sensorOrientation, ClassificationResult result) throws InterruptedException {
+        ImageClassifier classifier = borrow();
+        try {
+            classifier.classifyImage(bitmap, sensorOrientation, result);
+        } finally {
+            classifiers.giveBack(classifier);
+        }
+    }
+
+    public Task<ClassificationResult> recognizeAsync(final Bitmap bitmap, final int sensorOrientation) {
+        try {
+            return Tasks.call(executor, new Callable<ClassificationResult>() {
+                @Override
+                public ClassificationResult call() throws Exception {
+                    return recognize(bitmap, sensorOrientation);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return Tasks.forException(new IllegalStateException("ImageClassifierPool is closed", e));
+        }
+    }
+
+    private ImageClassifier borrow() throws InterruptedException {
+        ImageClassifier classifier = classifiers.tryBorrow();
+        if (classifier != null) {
+            waitStats.record(0);
+            return classifier;
+        }
+        long start = System.nanoTime();
+        classifier = classifiers.borrow();
+        waitStats.record(System.nanoTime() - start);
+        return classifier;
+    }
+
+    //queued and waiting requests fail, in-flight ones finish before their interpreter is closed
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        classifiers.close(new ResourcePool.Closer<ImageClassifier>() {
+            @Override
+            public void close(ImageClassifier classifier) {
+                classifier.close();
+            }
+        });
+    }
+}
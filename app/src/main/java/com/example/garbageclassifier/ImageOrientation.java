@@ -0,0 +1,85 @@
+package com.example.garbageclassifier;
+
+//How stored pixels have to be turned to appear upright: counter-clockwise quarter turns, then an
+//optional horizontal mirror. The preprocessor applies it while it samples, pixels are never moved.
+public final class ImageOrientation {
+
+    //EXIF orientation tag values, as in ExifInterface
+    public static final int EXIF_NORMAL = 1;
+    public static final int EXIF_FLIP_HORIZONTAL = 2;
+    public static final int EXIF_ROTATE_180 = 3;
+    public static final int EXIF_FLIP_VERTICAL = 4;
+    public static final int EXIF_TRANSPOSE = 5;
+    public static final int EXIF_ROTATE_90 = 6;
+    public static final int EXIF_TRANSVERSE = 7;
+    public static final int EXIF_ROTATE_270 = 8;
+
+    public static final ImageOrientation NORMAL = new ImageOrientation(0, false);
+
+    private final int quarterTurns;
+    private final boolean mirrored;
+
+    public ImageOrientation(int quarterTurns, boolean mirrored) {
+        this.quarterTurns = ((quarterTurns % 4) + 4) % 4;
+        this.mirrored = mirrored;
+    }
+
+    //clockwise degrees, the convention of CameraX ImageInfo and ML Kit InputImage
+    public static ImageOrientation fromRotationDegrees(int clockwiseDegrees) {
+        return new ImageOrientation(-clockwiseDegrees / 90, false);
+    }
+
+    //unknown or missing values are treated as upright
+    public static ImageOrientation fromExif(int exifOrientation) {
+        switch (exifOrientation) {
+            case EXIF_FLIP_HORIZONTAL:
+                return new ImageOrientation(0, true);
+            case EXIF_ROTATE_180:
+                return new ImageOrientation(2, false);
+            case EXIF_FLIP_VERTICAL:
+                return new ImageOrientation(2, true);
+            case EXIF_TRANSPOSE:
+                return new ImageOrientation(3, true);
+            case EXIF_ROTATE_90:
+                return new ImageOrientation(3, false);
+            case EXIF_TRANSVERSE:
+                return new ImageOrientation(1, true);
+            case EXIF_ROTATE_270:
+                return new ImageOrientation(1, false);
+            default:
+                return NORMAL;
+        }
+    }
+
+    public int getQuarterTurns() {
+        return quarterTurns;
+    }
+
+    //clockwise degrees of the rotation part
+    public int getRotationDegrees() {
+        return (4 - quarterTurns) % 4 * 90;
+    }
+
+    //mirrored horizontally after the rotation
+    public boolean isMirrored() {
+        return mirrored;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ImageOrientation)) return false;
+        ImageOrientation other = (ImageOrientation) o;
+        return quarterTurns == other.quarterTurns && mirrored == other.mirrored;
+    }
+
+    @Override
+    public int hashCode() {
+        return quarterTurns * 2 + (mirrored ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "ImageOrientation {" + getRotationDegrees() + " degrees clockwise" + (mirrored ? ", mirrored" : "") + '}';
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.garbageclassifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//How the TFLite interpreter executes the model: plain CPU kernels, XNNPACK, NNAPI or the GPU delegate
+public class InferenceBackend {
+
+    public enum Type { CPU, XNNPACK, NNAPI, GPU }
+
+    public static final InferenceBackend DEFAULT = new InferenceBackend(Type.CPU, 1);
+
+    private final Type type;
+    private final int numThreads;
+
+    public InferenceBackend(Type type, int numThreads) {
+        if (numThreads < 1)
+            throw new IllegalArgumentException("numThreads must be at least 1, was " + numThreads);
+        this.type = type;
+        this.numThreads = numThreads;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public boolean usesDelegate() {
+        return type == Type.NNAPI || type == Type.GPU;
+    }
+
+    //configurations worth timing on a device with the given number of cores
+    public static List<InferenceBackend> candidates(int cores, boolean includeDelegates) {
+        List<InferenceBackend> candidates = new ArrayList<>();
+        int maxThreads = Math.max(1, Math.min(4, cores));
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            candidates.add(new InferenceBackend(Type.CPU, threads));
+            candidates.add(new InferenceBackend(Type.XNNPACK, threads));
+        }
+        if (includeDelegates) {
+            candidates.add(new InferenceBackend(Type.NNAPI, 1));
+            candidates.add(new InferenceBackend(Type.GPU, 1));
+        }
+        return candidates;
+    }
+
+    //stable text form used to persist the tuned choice, e.g. "XNNPACK:4"
+    public String toKey() {
+        return type.name() + ":" + numThreads;
+    }
+
+    public static InferenceBackend fromKey(String key) {
+        if (key == null)
+            return null;
+        int separator = key.indexOf(':');
+        if (separator < 0)
+            return null;
+        try {
+            return new InferenceBackend(Type.valueOf(key.substring(0, separator)), Integer.parseInt(key.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InferenceBackend)) return false;
+        InferenceBackend other = (InferenceBackend) o;
+        return type == other.type && numThreads == other.numThreads;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * type.hashCode() + numThreads;
+    }
+
+    @Override
+    public String toString() {
+        return toKey();
+    }
+}
@@ -0,0 +1,271 @@
+package com.example.garbageclassifier;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+//Runs a photo from its Uri to the UI off the main thread: decode (pixels as stored, plus the EXIF
+//orientation) -> quality check -> classify
+//(preprocess, infer and category mapping inside the engine) -> post to the UI. Only the newest
+//request matters, submitting one cancels the one before it, which then never reaches the UI.
+//Every request carries a StageTimer, and each stage is also aggregated over all requests.
+public class InferencePipeline {
+
+    public static final String DECODE = "decode";
+    public static final String QUALITY = "quality";
+    public static final String CLASSIFY = "classify";
+    public static final String POST = "post";
+
+    //all called on the UI executor, and only for the newest request
+    public interface Listener {
+        void onDecoded(Request request, Bitmap bitmap);
+
+        void onRejected(Request request, Bitmap bitmap, QualityPrefilter.Verdict verdict);
+
+        void onClassified(Request request, Bitmap bitmap, Classification classification);
+
+        void onFailed(Request request, Exception e);
+    }
+
+    public static final class Request {
+        //ties results that arrive later, like queued cloud answers, to this photo
+        private final String id = UUID.randomUUID().toString();
+        private final Classifier classifier;
+        //set once decoded, the engines are handed this bitmap
+        private volatile Bitmap bitmap;
+        //read during decode, or given with an already decoded bitmap
+        private volatile ImageOrientation orientation;
+        private final CancellationTokenSource cancellation = new CancellationTokenSource();
+        private final StageTimer timings = new StageTimer();
+
+        private Request(Classifier classifier, ImageOrientation orientation) {
+            this.classifier = classifier;
+            this.orientation = orientation;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public Classifier getClassifier() {
+            return classifier;
+        }
+
+        public ImageOrientation getOrientation() {
+            return orientation;
+        }
+
+        public StageTimer getTimings() {
+            return timings;
+        }
+
+        public boolean isCancelled() {
+            return cancellation.getToken().isCancellationRequested();
+        }
+
+        public void cancel() {
+            cancellation.cancel();
+        }
+    }
+
+    private final BitmapDecoder decoder;
+    private final Executor uiExecutor;
+    private final Listener listener;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final LatencyStats decodeStats = new LatencyStats(64);
+    private final LatencyStats qualityStats = new LatencyStats(64);
+    private final LatencyStats classifyStats = new LatencyStats(64);
+    private final LatencyStats postStats = new LatencyStats(64);
+    //only touched on the pipeline thread
+    private final BitmapRowSource qualitySource = new BitmapRowSource();
+    private Request current;
+    private long submitted, cancelled;
+
+    public InferencePipeline(BitmapDecoder decoder, Executor uiExecutor, Listener listener) {
+        this.decoder = decoder;
+        this.uiExecutor = uiExecutor;
+        this.listener = listener;
+    }
+
+    //a photo still to be decoded; with a prefilter, photos that fail it are not classified
+    public Request submit(final ContentResolver resolver, final Uri uri, final Classifier classifier, @Nullable final QualityPrefilter prefilter) {
+        final Request request = replaceCurrent(classifier, ImageOrientation.NORMAL);
+        execute(request, new Runnable() {
+            @Override
+            public void run() {
+                if (request.isCancelled())
+                    return;
+                final Bitmap bitmap;
+                try {
+                    bitmap = decoder.decode(resolver, uri);
+                    request.orientation = BitmapDecoder.readOrientation(resolver, uri);
+                } catch (Exception e) {
+                    fail(request, e);
+                    return;
+                }
+                decodeStats.record(request.getTimings().mark(DECODE));
+                post(request, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onDecoded(request, bitmap);
+                    }
+                }, false);
+
+                if (prefilter != null) {
+                    final QualityPrefilter.Verdict verdict = prefilter.check(qualitySource.setBitmap(bitmap));
+                    qualitySource.setBitmap(null);
+                    qualityStats.record(request.getTimings().mark(QUALITY));
+                    if (verdict != QualityPrefilter.Verdict.OK) {
+                        post(request, new Runnable() {
+                            @Override
+                            public void run() {
+                                listener.onRejected(request, bitmap, verdict);
+                            }
+                        }, true);
+                        return;
+                    }
+                }
+                classify(request, bitmap);
+            }
+        });
+        return request;
+    }
+
+    //an already decoded bitmap, e.g. a photo the user chose to keep after the quality check
+    public Request submit(final Bitmap bitmap, ImageOrientation orientation, final Classifier classifier) {
+        final Request request = replaceCurrent(classifier, orientation);
+        execute(request, new Runnable() {
+            @Override
+            public void run() {
+                if (!request.isCancelled())
+                    classify(request, bitmap);
+            }
+        });
+        return request;
+    }
+
+    private synchronized Request replaceCurrent(Classifier classifier, ImageOrientation orientation) {
+        if (current != null && !current.isCancelled()) {
+            current.cancel();
+            cancelled++;
+        }
+        submitted++;
+        current = new Request(classifier, orientation);
+        return current;
+    }
+
+    //the id of the newest request if the engines are classifying this bitmap for it, null otherwise
+    @Nullable
+    public synchronized String idOf(Bitmap bitmap) {
+        return current != null && current.bitmap == bitmap ? current.id : null;
+    }
+
+    private synchronized boolean isCurrent(Request request) {
+        return request == current && !request.isCancelled();
+    }
+
+    private void execute(Request request, Runnable stages) {
+        try {
+            executor.execute(stages);
+        } catch (RejectedExecutionException e) {
+            request.cancel();
+        }
+    }
+
+    private void classify(final Request request, final Bitmap bitmap) {
+        request.bitmap = bitmap;
+        //the engines skip work for a request that is cancelled while it waits for them
+        request.classifier.classify(bitmap, request.orientation, request.cancellation.getToken()).addOnCompleteListener(uiExecutor, new OnCompleteListener<Classification>() {
+            @Override
+            public void onComplete(@NonNull final Task<Classification> task) {
+                if (task.isCanceled())
+                    return;
+                classifyStats.record(request.getTimings().mark(CLASSIFY));
+                if (!task.isSuccessful()) {
+                    fail(request, task.getException());
+                    return;
+                }
+                //already on the UI executor
+                guard(request, new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onClassified(request, bitmap, task.getResult());
+                    }
+                }, true).run();
+            }
+        });
+    }
+
+    private void fail(final Request request, final Exception e) {
+        post(request, new Runnable() {
+            @Override
+            public void run() {
+                listener.onFailed(request, e);
+            }
+        }, true);
+    }
+
+    private void post(Request request, Runnable delivery, boolean last) {
+        uiExecutor.execute(guard(request, delivery, last));
+    }
+
+    //wraps a listener call so that it is dropped for stale requests; the final one is timed as the post stage
+    private Runnable guard(final Request request, final Runnable delivery, final boolean last) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (!isCurrent(request))
+                    return;
+                delivery.run();
+                if (last)
+                    postStats.record(request.getTimings().mark(POST));
+            }
+        };
+    }
+
+    public LatencyStats getStageStats(String stage) {
+        switch (stage) {
+            case DECODE:
+                return decodeStats;
+            case QUALITY:
+                return qualityStats;
+            case CLASSIFY:
+                return classifyStats;
+            case POST:
+                return postStats;
+            default:
+                throw new IllegalArgumentException("Unknown stage " + stage);
+        }
+    }
+
+    public void close() {
+        Request request;
+        synchronized (this) {
+            request = current;
+            current = null;
+        }
+        if (request != null)
+            request.cancel();
+        executor.shutdown();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "InferencePipeline {submitted=%d, cancelled=%d, decode %s, quality %s, classify %s, post %s}",
+                submitted, cancelled, decodeStats, qualityStats, classifyStats, postStats);
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.garbageclassifier;
+
+//One entry of a Cloud Vision labelAnnotations list. Immutable.
+public final class LabelAnnotation {
+
+    private final String mid;
+    private final String description;
+    private final float score;
+    private final float topicality;
+
+    public LabelAnnotation(String mid, String description, float score, float topicality) {
+        this.mid = mid;
+        this.description = description;
+        this.score = score;
+        this.topicality = topicality;
+    }
+
+    //Knowledge Graph entity id, may be null
+    public String getMid() {
+        return mid;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public float getTopicality() {
+        return topicality;
+    }
+
+    @Override
+    public String toString() {
+        return "LabelAnnotation {" + "mid=" + mid + ", description=" + description + ", score=" + score + '}';
+    }
+}
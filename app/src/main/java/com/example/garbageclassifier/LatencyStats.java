@@ -0,0 +1,61 @@
+package com.example.garbageclassifier;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+//Running latency counters plus a ring of recent samples for percentiles. Thread safe.
+public class LatencyStats {
+
+    private final long[] recent;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private int next;
+
+    public LatencyStats(int window) {
+        recent = new long[window];
+    }
+
+    public synchronized void record(long nanos) {
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        recent[next] = nanos;
+        next = (next + 1) % recent.length;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : totalNanos / 1e6 / count;
+    }
+
+    public synchronized double getMaxMillis() {
+        return maxNanos / 1e6;
+    }
+
+    //percentile (0..100) over the most recent window of samples
+    public synchronized double getPercentileMillis(double percentile) {
+        int size = (int) Math.min(count, recent.length);
+        if (size == 0) return 0;
+        long[] sorted = Arrays.copyOf(recent, size);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, rank))] / 1e6;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        next = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "n=%d mean=%.1fms p50=%.1fms p95=%.1fms max=%.1fms",
+                count, getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95), getMaxMillis());
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.garbageclassifier;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+//Classifies camera frames as fast as the model allows. Frames are preprocessed on the analyzer
+//thread into one of two input buffers while the inference thread runs the other, so the next
+//frame's preprocessing overlaps the current inference. When both buffers are taken the frame is
+//dropped at once; with KEEP_ONLY_LATEST the camera then hands over the freshest frame next.
+//Blurred or badly exposed frames are dropped by the quality prefilter, and the stream controller
+//skips frames of a scene that is already classified and smooths the results.
+public class LiveAnalyzer implements ImageAnalysis.Analyzer {
+
+    public static final String NAME = "tflite-live";
+    private static final int BUFFER_COUNT = 2;
+
+    public interface Listener {
+        //on the inference thread
+        void onClassified(Classification classification, LiveAnalyzer analyzer);
+
+        //on the inference thread, the analyzer has stopped and drops every further frame
+        void onFailed(Exception e, LiveAnalyzer analyzer);
+    }
+
+    private final ImageClassifier classifier;
+    private final QualityPrefilter prefilter;
+    private final StreamController controller;
+    private final Listener listener;
+    private final FusedPreprocessor[] preprocessors = new FusedPreprocessor[BUFFER_COUNT];
+    private final Semaphore freeBuffers = new Semaphore(BUFFER_COUNT);
+    private final ExecutorService inferenceExecutor = Executors.newSingleThreadExecutor();
+    private final YuvRowSource frame = new YuvRowSource();
+    //only touched on the inference thread
+    private final ClassificationResult result = new ClassificationResult(ImageClassifier.MAX_SIZE);
+    private final FrameRateMeter frameRate = new FrameRateMeter(30);
+    private final LatencyStats preprocessStats = new LatencyStats(256);
+    private final LatencyStats inferenceStats = new LatencyStats(256);
+    private int nextBuffer;
+    private volatile long droppedFrames;
+    private volatile boolean closed;
+
+    public LiveAnalyzer(ImageClassifier classifier, QualityPrefilter prefilter, StreamController controller, Listener listener) {
+        this.classifier = classifier;
+        this.prefilter = prefilter;
+        this.controller = controller;
+        this.listener = listener;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            preprocessors[i] = classifier.newInputPreprocessor();
+        }
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        try {
+            if (closed || !freeBuffers.tryAcquire()) {
+                droppedFrames++;
+                return;
+            }
+            ImageProxy.PlaneProxy luma = image.getPlanes()[0];
+            if (prefilter.check(luma.getBuffer(), image.getWidth(), image.getHeight(), luma.getRowStride(), luma.getPixelStride()) != QualityPrefilter.Verdict.OK
+                    || !controller.onFrame(luma.getBuffer(), image.getWidth(), image.getHeight(), luma.getRowStride(), luma.getPixelStride())) {
+                freeBuffers.release();
+                return;
+            }
+            final int buffer = nextBuffer;
+            nextBuffer = (nextBuffer + 1) % BUFFER_COUNT;
+            long start = System.nanoTime();
+            ImageOrientation orientation = ImageOrientation.fromRotationDegrees(image.getImageInfo().getRotationDegrees());
+            //crop, scale and rotation read the camera planes directly into the input buffer
+            preprocessors[buffer].process(wrap(image), orientation);
+            frame.clear();
+            preprocessStats.record(System.nanoTime() - start);
+            try {
+                inferenceExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        infer(buffer);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                freeBuffers.release();
+            }
+        } finally {
+            image.close();
+        }
+    }
+
+    private YuvRowSource wrap(ImageProxy image) {
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        return frame.setPlanes(image.getWidth(), image.getHeight(),
+                planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride());
+    }
+
+    private void infer(int buffer) {
+        Classification classification;
+        try {
+            if (closed)
+                return;
+            long start = System.nanoTime();
+            classifier.classifyInput(preprocessors[buffer].getBuffer(), result);
+            long latency = System.nanoTime() - start;
+            inferenceStats.record(latency);
+            frameRate.tick();
+            classification = controller.onClassification(classifier.toClassification(NAME, result, latency));
+        } catch (IllegalStateException e) {
+            //the classifier was closed under us, every further frame would fail the same way
+            if (!closed) {
+                closed = true;
+                listener.onFailed(e, this);
+            }
+            return;
+        } finally {
+            freeBuffers.release();
+        }
+        listener.onClassified(classification, this);
+    }
+
+    //classified frames per second, sustained over the last 30 frames
+    public double getFramesPerSecond() {
+        return frameRate.getFramesPerSecond();
+    }
+
+    public QualityPrefilter getPrefilter() {
+        return prefilter;
+    }
+
+    public StreamController getController() {
+        return controller;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public LatencyStats getPreprocessStats() {
+        return preprocessStats;
+    }
+
+    public LatencyStats getInferenceStats() {
+        return inferenceStats;
+    }
+
+    public void close() {
+        closed = true;
+        inferenceExecutor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "LiveAnalyzer {%.1f fps, dropped=%d, preprocess %s, inference %s, %s, %s}",
+                getFramesPerSecond(), droppedFrames, preprocessStats, inferenceStats, prefilter, controller);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.garbageclassifier;
+
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.Preview;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.util.Log;
+import android.util.Size;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+//Live viewfinder that keeps classifying what the back camera sees
+public class LiveClassificationActivity extends AppCompatActivity {
+
+    private static final String TAG = "LiveClassification";
+    private static final int REQUEST_CAMERA_PERMISSION = 10;
+    //frames this size are plenty for a 224x224 model and cheap to convert
+    private static final Size ANALYSIS_SIZE = new Size(640, 480);
+
+    private PreviewView previewView;
+    private TextView predictionView;
+    private TextView fpsView;
+
+    private ClassifierHolder classifierHolder;
+    private final ExecutorService analyzerExecutor = Executors.newSingleThreadExecutor();
+    private LiveAnalyzer analyzer;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_live);
+
+        previewView = findViewById(R.id.previewView);
+        predictionView = findViewById(R.id.livePrediction);
+        fpsView = findViewById(R.id.liveFps);
+
+        classifierHolder = GarbageClassifierApp.getClassifierHolder(this);
+        classifierHolder.acquire();
+
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED)
+            startCamera();
+        else
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.CAMERA}, REQUEST_CAMERA_PERMISSION);
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode != REQUEST_CAMERA_PERMISSION)
+            return;
+        if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            startCamera();
+        } else {
+            Toast.makeText(this, "The live view needs the camera", Toast.LENGTH_SHORT).show();
+            finish();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (analyzer != null) {
+            Log.d(TAG, analyzer.toString());
+            analyzer.close();
+        }
+        analyzerExecutor.shutdown();
+        classifierHolder.release();
+        super.onDestroy();
+    }
+
+    private void startCamera() {
+        predictionView.setText("Loading model...");
+        final ListenableFuture<ProcessCameraProvider> providerFuture = ProcessCameraProvider.getInstance(this);
+        classifierHolder.getClassifier().addOnSuccessListener(this, new OnSuccessListener<ImageClassifier>() {
+            @Override
+            public void onSuccess(final ImageClassifier classifier) {
+                providerFuture.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            bindCamera(providerFuture.get(), classifier);
+                        } catch (ExecutionException | InterruptedException e) {
+                            predictionView.setText("The camera could not be opened.");
+                        }
+                    }
+                }, ContextCompat.getMainExecutor(LiveClassificationActivity.this));
+            }
+        }).addOnFailureListener(this, new OnFailureListener() {
+            @Override
+            public void onFailure(@NonNull Exception e) {
+                predictionView.setText("The classifier could not be loaded.");
+            }
+        });
+    }
+
+    private void bindCamera(ProcessCameraProvider cameraProvider, ImageClassifier classifier) {
+        if (isDestroyed())
+            return;
+        if (!classifier.supportsDirectInput()) {
+            predictionView.setText("The live view needs the quantized model.");
+            return;
+        }
+        Preview preview = new Preview.Builder().build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+        //a slow model never builds a backlog, the analyzer always gets the newest frame
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setTargetResolution(ANALYSIS_SIZE)
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .build();
+        //a rebind after the classifier was released replaces the stopped analyzer
+        if (analyzer != null)
+            analyzer.close();
+        analyzer = new LiveAnalyzer(classifier, new QualityPrefilter(), new StreamController(), new LiveAnalyzer.Listener() {
+            @Override
+            public void onClassified(final Classification classification, final LiveAnalyzer analyzer) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        showClassification(classification, analyzer);
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(Exception e, final LiveAnalyzer failed) {
+                Log.w(TAG, "Live classification stopped", e);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        //the holder loads a new classifier, the camera is bound again with it
+                        if (isDestroyed() || failed != analyzer)
+                            return;
+                        Toast.makeText(LiveClassificationActivity.this, "The classifier was released, reloading it", Toast.LENGTH_SHORT).show();
+                        startCamera();
+                    }
+                });
+            }
+        });
+        analysis.setAnalyzer(analyzerExecutor, analyzer);
+
+        cameraProvider.unbindAll();
+        cameraProvider.bindToLifecycle(this, CameraSelector.DEFAULT_BACK_CAMERA, preview, analysis);
+    }
+
+    private void showClassification(Classification classification, LiveAnalyzer analyzer) {
+        //category scores are smoothed over the last frames, so the label does not flicker
+        StreamController controller = analyzer.getController();
+        int category = classification.getTopCategory();
+        Recognition top = classification.getTopLabel();
+        String lock = controller.isLocked() ? " (locked)" : "";
+        if (category != CategoryIndex.NO_CATEGORY)
+            predictionView.setText(CategoryIndex.nameOf(category) + " --- Confidence: " + classification.getCategoryScore(category) + lock);
+        else if (top != null)
+            predictionView.setText(top.getName() + " --- Confidence: " + top.getConfidence());
+        //the analyzer's sustained classified frames/s, and how often the controller let a frame through
+        fpsView.setText(String.format(Locale.US, "%.1f fps, %.1f inferences/s, %.0f%% frames skipped, %.0f%% rejected, %d ms inference",
+                analyzer.getFramesPerSecond(), controller.getInferencesPerSecond(), controller.getSkipRatio() * 100,
+                analyzer.getPrefilter().getRejectionRate() * 100, classification.getLatencyNanos() / 1000000));
+    }
+}
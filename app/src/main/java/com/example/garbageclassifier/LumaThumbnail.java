@@ -0,0 +1,54 @@
+package com.example.garbageclassifier;
+
+import java.nio.ByteBuffer;
+
+//A tiny grid of luma samples taken from a camera frame's Y plane, enough to tell whether the
+//scene moved without looking at the full frame. Samples are reused across frames.
+public class LumaThumbnail {
+
+    private final int columns, rows;
+    private final byte[] samples;
+    private boolean empty = true;
+
+    public LumaThumbnail(int columns, int rows) {
+        this.columns = columns;
+        this.rows = rows;
+        samples = new byte[columns * rows];
+    }
+
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    //point samples the center of every grid cell
+    public LumaThumbnail sample(ByteBuffer yPlane, int width, int height, int rowStride, int pixelStride) {
+        int index = 0;
+        for (int row = 0; row < rows; row++) {
+            int rowOffset = ((2 * row + 1) * height / (2 * rows)) * rowStride;
+            for (int column = 0; column < columns; column++) {
+                int x = (2 * column + 1) * width / (2 * columns);
+                samples[index++] = yPlane.get(rowOffset + x * pixelStride);
+            }
+        }
+        empty = false;
+        return this;
+    }
+
+    public void copyFrom(LumaThumbnail other) {
+        System.arraycopy(other.samples, 0, samples, 0, samples.length);
+        empty = other.empty;
+    }
+
+    public void clear() {
+        empty = true;
+    }
+
+    //mean absolute luma difference, 0 to 255. Thumbnails must have the same grid.
+    public float difference(LumaThumbnail other) {
+        long sum = 0;
+        for (int i = 0; i < samples.length; i++) {
+            sum += Math.abs((samples[i] & 0xFF) - (other.samples[i] & 0xFF));
+        }
+        return sum / (float) samples.length;
+    }
+}
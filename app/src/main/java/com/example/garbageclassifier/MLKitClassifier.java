@@ -1,22 +1,33 @@
 package com.example.garbageclassifier;
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
 import android.media.Image;
 import android.os.Build;
+import android.util.Log;
 import android.util.SparseIntArray;
 import android.view.Surface;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageProxy;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.OnLifecycleEvent;
 
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.label.ImageLabel;
 import com.google.mlkit.vision.label.ImageLabeler;
@@ -27,10 +38,12 @@ import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import static android.content.Context.CAMERA_SERVICE;
 
-public class MLKitClassifier {
+public class MLKitClassifier implements Classifier, LifecycleObserver {
 
     private static final SparseIntArray ORIENTATIONS = new SparseIntArray();
     static {
@@ -40,72 +53,115 @@ public class MLKitClassifier {
         ORIENTATIONS.append(Surface.ROTATION_270, 270);
     }
 
-    public MLKitClassifier(Activity activity){
+    public static final String NAME = "mlkit";
+    private static final String TAG = "MLKitClassifier";
+
+    private final CategoryIndex categoryIndex;
+    private final Executor executor;
+    private final ImageLabeler labeler;
+    private final LatencyStats latencyStats = new LatencyStats(256);
+    //completes once closed and every labeler task has settled
+    private final TaskCompletionSource<Void> idle = new TaskCompletionSource<>();
+    //guarded by this
+    private boolean closed;
+    private int pending;
+
+    //one labeler for the lifetime of this classifier. ML Kit runs it on `executor` and the
+    //results are delivered there too, so nothing lands on the main thread. The executor stays
+    //the caller's; shut it down once getIdleTask() completes, late callbacks still need it.
+    public MLKitClassifier(Context context, Executor executor){
+        //ML Kit has its own vocabulary, only the category lists are needed to map it
+        categoryIndex = ClassifierModel.loadCategoryIndex(context, Collections.<String>emptyList());
+        this.executor = executor;
+        labeler = ImageLabeling.getClient(new ImageLabelerOptions.Builder()
+                .setExecutor(executor)
+                .build());
+    }
 
+    @Override
+    public String getName() {
+        return NAME;
     }
 
-    public List<Recognition> recognizeImage(final Bitmap bitmap, final int rotationDegree) {
-        List<MLKitClassifier.Recognition> recognitions = new ArrayList<>();
+    @Override
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
 
-        InputImage image = InputImage.fromBitmap(bitmap, rotationDegree);
-        ImageLabeler labeler = ImageLabeling.getClient(ImageLabelerOptions.DEFAULT_OPTIONS);
+    @Override
+    public Task<Classification> classify(final Bitmap bitmap, final ImageOrientation orientation, @Nullable CancellationToken cancellationToken) {
+        synchronized (this) {
+            if (closed)
+                return Tasks.forException(new IllegalStateException("MLKitClassifier is closed"));
+            pending++;
+        }
+        final TaskCompletionSource<Classification> source = Classifiers.newSource(cancellationToken);
+        final long start = System.nanoTime();
+
+        //ML Kit only takes a rotation, mirrored images are labelled as they are
+        InputImage image = InputImage.fromBitmap(bitmap, orientation.getRotationDegrees());
+        //a dispatch the executor rejects still settles the task instead of leaving it pending
+        Executor guarded = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                try {
+                    executor.execute(command);
+                } catch (RejectedExecutionException e) {
+                    source.trySetException(new IllegalStateException("MLKitClassifier is closed", e));
+                    finishOne();
+                }
+            }
+        };
         labeler.process(image)
-                .addOnSuccessListener(new OnSuccessListener<List<ImageLabel>>() {
+                .addOnCompleteListener(guarded, new OnCompleteListener<List<ImageLabel>>() {
                     @Override
-                    public void onSuccess(List<ImageLabel> labels) {
-                        for (ImageLabel label : labels) {
-                            String text = label.getText();
-                            float confidence = label.getConfidence();
-                            int index = label.getIndex();
-                            recognitions.add(new Recognition(text, confidence));
+                    public void onComplete(@NonNull Task<List<ImageLabel>> task) {
+                        finishOne();
+                        if (!task.isSuccessful()) {
+                            Log.w(TAG, "Labeling failed", task.getException());
+                            source.trySetException(task.getException());
+                            return;
                         }
-                    }
-                })
-                .addOnFailureListener(new OnFailureListener() {
-                    @Override
-                    public void onFailure(@NonNull Exception e) {
-                        System.out.println("Task Failed");
+                        List<Recognition> recognitions = new ArrayList<>();
+                        for (ImageLabel label : task.getResult()) {
+                            recognitions.add(new Recognition(label.getText(), label.getConfidence()));
+                        }
+                        long latency = System.nanoTime() - start;
+                        latencyStats.record(latency);
+                        source.trySetResult(Classification.fromLabels(NAME, recognitions, categoryIndex, latency));
                     }
                 });
-        Collections.sort(recognitions);
-        return recognitions;
+        return source.getTask();
     }
 
-    class Recognition implements Comparable{
-        private String name;
-        private float confidence;
-
-        public Recognition(String name, float confidence) {
-            this.name = name;
-            this.confidence = confidence;
-        }
-
-        public String getName() {
-            return name;
-        }
-
-        public void setName(String name) {
-            this.name = name;
-        }
-
-        public float getConfidence() {
-            return confidence;
+    //also runs when the owning lifecycle is destroyed, see LifecycleOwner.getLifecycle().addObserver
+    @Override
+    @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+    public void close() {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
         }
+        labeler.close();
+        settleIfIdle();
+    }
 
-        public void setConfidence(float confidence) {
-            this.confidence = confidence;
-        }
+    //when this completes the executor is no longer needed
+    public Task<Void> getIdleTask() {
+        return idle.getTask();
+    }
 
-        @Override
-        public String toString() {
-            return "Recognition {" + "name=" + name + ", confidence=" + confidence + '}';
+    private void finishOne() {
+        synchronized (this) {
+            pending--;
         }
+        settleIfIdle();
+    }
 
-        @Override
-        public int compareTo(Object o) {
-            return Float.compare(((Recognition) o).confidence, this.confidence);
-        }
+    private synchronized void settleIfIdle() {
+        if (closed && pending == 0)
+            idle.trySetResult(null);
     }
 
 }
-
@@ -1,18 +1,22 @@
 package com.example.garbageclassifier;
 
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import androidx.core.content.FileProvider;
 
 import android.content.ActivityNotFoundException;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.os.Handler;
 import android.provider.MediaStore;
+import android.util.Log;
 import android.view.View;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
@@ -20,31 +24,78 @@ import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
 
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
 
     static final int REQUEST_IMAGE_CAPTURE = 1;
     private static final int GALLERY_REQUEST_CODE = 123;
+    private static final int MODEL_INPUT_SIZE = 224;
+    //whether photos taken with the camera are also sent to the cloud function
+    private static final boolean FAN_OUT_TO_CLOUD = false;
+    private static final int MAX_LOCAL_RESULTS = 32;
+    private static final String STATE_PHOTO_PATH = "photoPath";
+    private static final String STATE_IMAGE_URI = "imageUri";
 
     private ImageView imageView;
     private ListView listView;
     private TextView predictionMain;
 
     private Uri imageUri;
-    private ImageClassifier imageClassifier;
+    private File photoFile;
+    private CaptureLatency captureLatency;
+    private final BitmapPool bitmapPool = new BitmapPool(2);
+    private final BitmapDecoder bitmapDecoder = new BitmapDecoder(MODEL_INPUT_SIZE, bitmapPool);
+    private final Set<Bitmap> busyBitmaps = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+    private Bitmap shownBitmap;
+    private ClassifierHolder classifierHolder;
+    private TfliteClassifier localClassifier;
     private MLKitClassifier mlClassifier;
+    private FirebaseImageClassifier cloudClassifier;
+    private CascadeClassifier cascadeClassifier;
+    private FanOutClassifier fanOutClassifier;
+    private ConnectivityFlusher offlineFlusher;
+    private final ExecutorService mlKitExecutor = Executors.newSingleThreadExecutor();
+    //photos that are blurred or badly exposed are worth retaking before they are classified
+    private final QualityPrefilter prefilter = new QualityPrefilter();
+    //decodes and classifies photos off the main thread, newest first
+    private InferencePipeline pipeline;
+    private InferencePipeline.Request intentRequest;
+    //the local result of recent photos by request id, a queued cloud answer replaces it when it arrives
+    private final Map<String, Classification> localResults = new LinkedHashMap<String, Classification>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Classification> eldest) {
+            return size() > MAX_LOCAL_RESULTS;
+        }
+    };
+    private String shownRequestId;
+    private long intentShutterMillis;
 
     //Creates buttons/UI for application
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        //the activity may have been recreated while the camera app had the screen
+        if (savedInstanceState != null) {
+            String photoPath = savedInstanceState.getString(STATE_PHOTO_PATH);
+            photoFile = photoPath != null ? new File(photoPath) : null;
+            imageUri = savedInstanceState.getParcelable(STATE_IMAGE_URI);
+        }
 
         imageView = findViewById(R.id.imageView);
         //listView = findViewById(R.id.listView);
@@ -52,13 +103,54 @@ public class MainActivity extends AppCompatActivity {
         Button captureBt = findViewById(R.id.capture);
         Button galBt = findViewById(R.id.gallery);
         Button mapBt = findViewById(R.id.mapbt);
+        Button liveBt = findViewById(R.id.live);
+        Button quickCaptureBt = findViewById(R.id.quickCapture);
 
-        try {
-            imageClassifier = new ImageClassifier(this);
-            mlClassifier = new MLKitClassifier(this);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        //one warm classifier for the whole process, loaded off the UI thread on first use
+        classifierHolder = GarbageClassifierApp.getClassifierHolder(this);
+        classifierHolder.acquire();
+        captureLatency = GarbageClassifierApp.getCaptureLatency(this);
+        localClassifier = new TfliteClassifier(classifierHolder);
+        //the labeler is closed with this activity, its callbacks run on mlKitExecutor
+        mlClassifier = new MLKitClassifier(this, mlKitExecutor);
+        getLifecycle().addObserver(mlClassifier);
+        //retries transient failures; no fallback, the cascade and fan-out already skip a failed
+        //engine, and the local model answering again would only repeat its uncertain label
+        cloudClassifier = new FirebaseImageClassifier(this);
+        //requests the cloud could not take wait on disk and go out once a network is back
+        final OfflineCloudQueue offlineQueue = GarbageClassifierApp.getOfflineQueue(this);
+        cloudClassifier.setOfflineQueue(offlineQueue);
+        //a queued request is recorded under the id of the photo it was made for
+        cloudClassifier.setRecordIds(new FirebaseImageClassifier.RecordIds() {
+            @Override
+            public String recordIdFor(Bitmap bitmap) {
+                return pipeline.idOf(bitmap);
+            }
+        });
+        //annotateImage takes one image per call, so a flush makes one call per queued record;
+        //with a batch-capable function the same batcher groups them
+        offlineFlusher = new ConnectivityFlusher(this, offlineQueue, cloudClassifier.getBatcher(), new OfflineCloudQueue.Listener() {
+            @Override
+            public void onResult(final String recordId, Map<String, Object> response) {
+                final Classification cloud = cloudClassifier.toClassification(response, 0);
+                Log.d("MainActivity", "Queued request " + recordId + " labelled " + cloud.getLabels() + ", " + offlineQueue);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        mergeCloudResult(recordId, cloud);
+                    }
+                });
+            }
+        });
+        offlineFlusher.register();
+        //gallery images only escalate to ML Kit and then the cloud while the local model is unsure
+        cascadeClassifier = new CascadeClassifier(ConfidencePolicy.DEFAULT, localClassifier, mlClassifier, cloudClassifier);
+        //photos just taken want the quickest confident label, so every engine runs at once
+        fanOutClassifier = FAN_OUT_TO_CLOUD
+                ? new FanOutClassifier(ConfidencePolicy.DEFAULT, localClassifier, mlClassifier, cloudClassifier)
+                : new FanOutClassifier(ConfidencePolicy.DEFAULT, localClassifier, mlClassifier);
+
+        pipeline = new InferencePipeline(bitmapDecoder, ContextCompat.getMainExecutor(this), pipelineListener);
 
         captureBt.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -85,6 +177,58 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        liveBt.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startActivity(new Intent(MainActivity.this, LiveClassificationActivity.class));
+            }
+        });
+
+        //takes the photo inside the app and keeps it in memory, no camera app or file in between
+        quickCaptureBt.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                startActivity(new Intent(MainActivity.this, CaptureActivity.class));
+            }
+        });
+
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (photoFile != null)
+            outState.putString(STATE_PHOTO_PATH, photoFile.getPath());
+        outState.putParcelable(STATE_IMAGE_URI, imageUri);
+    }
+
+    @Override
+    protected void onDestroy() {
+        Log.d("MainActivity", "latency tflite " + localClassifier.getLatencyStats() + ", mlkit " + mlClassifier.getLatencyStats());
+        Log.d("MainActivity", cascadeClassifier.toString());
+        Log.d("MainActivity", fanOutClassifier.toString());
+        Log.d("MainActivity", prefilter.toString());
+        Log.d("MainActivity", captureLatency.toString());
+        Log.d("MainActivity", pipeline.toString());
+        if (classifierHolder.isReady()) {
+            ImageClassifier classifier = classifierHolder.getClassifier().getResult();
+            Log.d("MainActivity", "tflite preprocess " + classifier.getPreprocessStats() + ", infer " + classifier.getInferenceStats() + ", map " + classifier.getMapStats());
+        }
+        Log.d("MainActivity", "cloud " + cloudClassifier.getTransport() + ", fallbacks " + cloudClassifier.getFallbackCount()
+                + ", encoder " + cloudClassifier.getEncoder());
+        pipeline.close();
+        offlineFlusher.unregister();
+        localClassifier.close();
+        cloudClassifier.close();
+        classifierHolder.release();
+        super.onDestroy();
+        //super.onDestroy() closed the labeler, late callbacks still run on the executor
+        mlClassifier.getIdleTask().addOnCompleteListener(new OnCompleteListener<Void>() {
+            @Override
+            public void onComplete(@NonNull Task<Void> task) {
+                mlKitExecutor.shutdown();
+            }
+        });
     }
 
     //
@@ -93,76 +237,140 @@ public class MainActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
         //IMAGE CAPTURE/CAMERA
         if (requestCode == REQUEST_IMAGE_CAPTURE && resultCode == RESULT_OK) {
-            try {
-                //convert image to bitmap and call recognizeImage
-                Bitmap img = BitmapFactory.decodeStream(getContentResolver().openInputStream(imageUri));
-                ImageView imgv = findViewById(R.id.imageView);
-                imgv.setImageBitmap(img);
-
-                List<ImageClassifier.Recognition> predictions = imageClassifier.recognizeImage(img, 0);
-                List<String> predictionsList = new ArrayList<>();
-                for (ImageClassifier.Recognition recog : predictions) {
-                    predictionsList.add("Label: " + recog.getName() + " Confidence: " + recog.getConfidence());
-                }
-                //ArrayAdapter<String> predictionsAdapter = new ArrayAdapter<>(this, R.layout.support_simple_spinner_dropdown_item, predictionsList);
-                //listView.setAdapter(predictionsAdapter);
-                String prediction = predictions.get(0).getName();
-                String tip = "";
-                if (prediction.equals("paper"))
-                    tip = "All paper is safe to recycle!";
-                else if (predictions.equals("plastic"))
-                    tip = "Please not that only rigid plastics are accepted for recycling.";
-                else if (predictions.equals("metal"))
-                    tip = "Please note that electronic devices are not accepeted for recycling.";
-                else if (predictions.equals("glass"))
-                    tip = "Only glass bottles and jars may be recycled as glass";
-                predictionMain.setText(prediction + " --- Confidence: " + predictions.get(0).getConfidence() + "\n" + tip);
-            }
-            catch (FileNotFoundException e) {
-                e.printStackTrace();
-            }
+            //decoded just above the model input size off the main thread, blurred or dark photos ask for a retake
+            intentRequest = pipeline.submit(getContentResolver(), imageUri, fanOutClassifier, prefilter);
+            //the camera app writes the file right after the shutter, its time stands in for the press;
+            //it is read on the same wall clock as now, so the difference is a real duration
+            intentShutterMillis = photoFile != null ? photoFile.lastModified() : 0;
         }
         //GALLERY
         if (requestCode == GALLERY_REQUEST_CODE && resultCode == RESULT_OK && data != null) {
             Uri imageData = data.getData();
-            ImageView imgv = findViewById(R.id.imageView);
-            imgv.setImageURI(imageData);
+            pipeline.submit(getContentResolver(), imageData, cascadeClassifier, null);
+        }
+    }
 
-            try {
-                Bitmap bitmap = MediaStore.Images.Media.getBitmap(this.getContentResolver(), imageData);
-                List<ImageClassifier.Recognition> predictions = imageClassifier.recognizeImage(bitmap, 0);
-                List<MLKitClassifier.Recognition> predictions2 = mlClassifier.recognizeImage(bitmap, 0);
-                List<String> predictionsList = new ArrayList<>();
-                for (ImageClassifier.Recognition recog : predictions) {
-                    predictionsList.add("Label: " + recog.getName() + " Confidence: " + recog.getConfidence());
-                }
-                //ArrayAdapter<String> predictionsAdapter = new ArrayAdapter<>(this, R.layout.support_simple_spinner_dropdown_item, predictionsList);
-                //listView.setAdapter(predictionsAdapter);
-                String prediction = predictions.get(0).getName();
-                String tip = "";
-                if (prediction.equals("paper")) {
-                    tip = "All paper is safe to recycle!";
-                }
-                else if (predictions.equals("plastic")) {
-                    tip = "Please not that only rigid plastics are accepted for recycling.";
-                }
-                else if (predictions.equals("metal")) {
-                    tip = "Please note that electronic devices are not accepeted for recycling.";
-                }
-                else if (predictions.equals("glass")) {
-                    tip = "Only glass bottles and jars may be recycled as glass";
-                }
-                predictionMain.setText(prediction + " --- Confidence: " + predictions.get(0).getConfidence() + "\n" + tip);
-            } catch (IOException e) {
-                e.printStackTrace();
+    //all on the main thread, and only for the newest photo, older ones are cancelled
+    private final InferencePipeline.Listener pipelineListener = new InferencePipeline.Listener() {
+        @Override
+        public void onDecoded(InferencePipeline.Request request, Bitmap bitmap) {
+            busyBitmaps.add(bitmap);
+            showBitmap(bitmap, request.getOrientation());
+            predictionMain.setText(classifierHolder.isReady() ? "" : "Loading model...");
+        }
+
+        @Override
+        public void onRejected(InferencePipeline.Request request, Bitmap bitmap, QualityPrefilter.Verdict verdict) {
+            busyBitmaps.remove(bitmap);
+            askToRetake(bitmap, request.getOrientation(), verdict);
+        }
+
+        @Override
+        public void onClassified(InferencePipeline.Request request, Bitmap bitmap, Classification classification) {
+            //every engine the classifier used is done reading the bitmap, but cancelled
+            //fan-out engines may still be, so those bitmaps stay busy and are left to the GC
+            if (!(request.getClassifier() instanceof FanOutClassifier))
+                doneWith(bitmap);
+            showPredictions(classification);
+            localResults.put(request.getId(), classification);
+            shownRequestId = request.getId();
+            if (request == intentRequest && intentShutterMillis > 0)
+                captureLatency.getIntentPath().record((System.currentTimeMillis() - intentShutterMillis) * 1000000);
+            Log.d("MainActivity", classification.getEngine() + " " + request.getTimings());
+        }
+
+        @Override
+        public void onFailed(InferencePipeline.Request request, Exception e) {
+            Log.e("MainActivity", "Classification failed", e);
+            predictionMain.setText(e instanceof IOException ? "The image could not be read." : "The classifier could not be loaded.");
+        }
+    };
+
+    private void askToRetake(final Bitmap bitmap, final ImageOrientation orientation, QualityPrefilter.Verdict verdict) {
+        String problem;
+        if (verdict == QualityPrefilter.Verdict.BLURRED)
+            problem = "The photo looks blurry.";
+        else if (verdict == QualityPrefilter.Verdict.UNDEREXPOSED)
+            problem = "The photo is too dark.";
+        else
+            problem = "The photo is too bright.";
+        predictionMain.setText(problem);
+        AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
+        builder.setTitle("Retake the photo?").setMessage(problem + " The label may be wrong.").setNegativeButton("Use anyway", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                busyBitmaps.add(bitmap);
+                predictionMain.setText(classifierHolder.isReady() ? "" : "Loading model...");
+                pipeline.submit(bitmap, orientation, fanOutClassifier);
             }
+        }).setPositiveButton("Retake", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                dispatchTakePictureIntent();
+            }
+        }).show();
+    }
+
+    //a decoded bitmap goes back to the pool once it is neither shown nor being classified
+    //the view is turned upright instead of the pixels
+    private void showBitmap(Bitmap bitmap, ImageOrientation orientation) {
+        Bitmap previous = shownBitmap;
+        shownBitmap = bitmap;
+        imageView.setImageBitmap(bitmap);
+        //views scale before they rotate, so a mirrored image turns the other way
+        imageView.setRotation(orientation.isMirrored() ? -orientation.getRotationDegrees() : orientation.getRotationDegrees());
+        imageView.setScaleX(orientation.isMirrored() ? -1f : 1f);
+        if (previous != null && previous != bitmap && !busyBitmaps.contains(previous))
+            bitmapPool.put(previous);
+    }
+
+    private void doneWith(Bitmap bitmap) {
+        busyBitmaps.remove(bitmap);
+        if (bitmap != shownBitmap)
+            bitmapPool.put(bitmap);
+    }
+
+    //the cloud's answer to a photo that was queued while offline replaces its local result
+    private void mergeCloudResult(String recordId, Classification cloud) {
+        if (isDestroyed() || !localResults.containsKey(recordId))
+            return;
+        localResults.put(recordId, cloud);
+        if (recordId.equals(shownRequestId))
+            showPredictions(cloud);
+    }
+
+    private void showPredictions(Classification classification) {
+        List<Recognition> predictions = classification.getLabels();
+        List<String> predictionsList = new ArrayList<>();
+        for (Recognition recog : predictions) {
+            predictionsList.add("Label: " + recog.getName() + " Confidence: " + recog.getConfidence());
+        }
+        //ArrayAdapter<String> predictionsAdapter = new ArrayAdapter<>(this, R.layout.support_simple_spinner_dropdown_item, predictionsList);
+        //listView.setAdapter(predictionsAdapter);
+        if (predictions.isEmpty()) {
+            predictionMain.setText("Nothing recognized.");
+            return;
         }
+        //the waste category when one is known, engines like ML Kit may only have their own labels
+        int category = classification.getTopCategory();
+        String prediction = category != CategoryIndex.NO_CATEGORY ? CategoryIndex.nameOf(category) : predictions.get(0).getName();
+        float confidence = category != CategoryIndex.NO_CATEGORY ? classification.getCategoryScore(category) : predictions.get(0).getConfidence();
+        String tip = "";
+        if (prediction.equals("paper"))
+            tip = "All paper is safe to recycle!";
+        else if (prediction.equals("plastic"))
+            tip = "Please not that only rigid plastics are accepted for recycling.";
+        else if (prediction.equals("metal"))
+            tip = "Please note that electronic devices are not accepeted for recycling.";
+        else if (prediction.equals("glass"))
+            tip = "Only glass bottles and jars may be recycled as glass";
+        predictionMain.setText(prediction + " --- Confidence: " + confidence + " (" + classification.getEngine() + ")\n" + tip);
     }
 
     //For when you want to take a picture
     private void dispatchTakePictureIntent() {
         try {
-            File photoFile = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "out_image.jpg");
+            photoFile = new File(getExternalFilesDir(Environment.DIRECTORY_PICTURES), "out_image.jpg");
             try {
                 if (photoFile.exists()) {
                     photoFile.delete();
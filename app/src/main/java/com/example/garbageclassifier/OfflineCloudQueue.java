@@ -0,0 +1,391 @@
+package com.example.garbageclassifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+//Durable queue of cloud requests that could not be sent, one small JSON file per request under
+//pending/. Appends and flushes run on the queue's own thread, so callers never wait on disk.
+//A flush hands everything pending to a CloudVisionBatcher, which sends it in batches; each
+//answer is merged into the request's record under results/ and reported to the listener.
+//Requests the service rejects for good are dropped, only transient failures stay queued.
+//Both directories are bounded, the oldest files go first.
+public class OfflineCloudQueue {
+
+    public interface Listener {
+        //`response` is one AnnotateImageResponse, on the queue's thread
+        void onResult(String recordId, Map<String, Object> response);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SUFFIX = ".json";
+
+    private final File pendingDir;
+    private final File resultsDir;
+    private final int maxEntries;
+    private final long maxBytes;
+    private final ExecutorService executor;
+    private final LatencyStats flushStats = new LatencyStats(64);
+
+    //only touched on the queue's thread
+    private long nextSequence = -1;
+    private final Set<String> inFlight = new HashSet<>();
+    private long flushStart;
+    private int flushRemaining;
+    private int flushCompleted;
+
+    //guarded by this
+    private int depth;
+    private long depthBytes;
+    private long enqueued, evicted, flushed, failed, rejected, writeFailures;
+    private double lastFlushPerSecond;
+
+    public OfflineCloudQueue(File directory, int maxEntries, long maxBytes) {
+        pendingDir = new File(directory, "pending");
+        resultsDir = new File(directory, "results");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "offline-cloud-queue");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                pendingDir.mkdirs();
+                resultsDir.mkdirs();
+                evict(pendingDir, true);
+            }
+        });
+    }
+
+    //returns right away, the request is written on the queue's thread
+    public void enqueue(final String recordId, final Map<String, Object> request) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Map<String, Object> record = new HashMap<>();
+                record.put("id", recordId);
+                record.put("queuedAt", System.currentTimeMillis());
+                record.put("request", request);
+                try {
+                    write(new File(pendingDir, String.format(Locale.US, "%019d", nextSequence()) + SUFFIX), record);
+                    synchronized (OfflineCloudQueue.this) {
+                        enqueued++;
+                    }
+                } catch (IOException e) {
+                    synchronized (OfflineCloudQueue.this) {
+                        writeFailures++;
+                    }
+                }
+                evict(pendingDir, true);
+            }
+        });
+    }
+
+    //sends every pending request that is not already on its way, oldest first
+    public void flush(final CloudVisionBatcher batcher, final Listener listener) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = sortedFiles(pendingDir);
+                if (inFlight.isEmpty()) {
+                    flushStart = System.nanoTime();
+                    flushRemaining = 0;
+                    flushCompleted = 0;
+                }
+                for (final File file : files) {
+                    if (!inFlight.add(file.getName()))
+                        continue;
+                    final Map<String, Object> record;
+                    try {
+                        record = read(file);
+                    } catch (Exception e) {
+                        //unreadable, probably cut short by a crash
+                        inFlight.remove(file.getName());
+                        file.delete();
+                        continue;
+                    }
+                    flushRemaining++;
+                    batcher.submit(requestOf(record), new CloudVisionBatcher.Callback() {
+                        @Override
+                        public void onResponse(final Map<String, Object> response) {
+                            executor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    complete(file, record, response, listener);
+                                }
+                            });
+                        }
+
+                        @Override
+                        public void onError(final Exception e) {
+                            executor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (isRejection(e)) {
+                                        //would fail the same way on every flush
+                                        file.delete();
+                                        synchronized (OfflineCloudQueue.this) {
+                                            rejected++;
+                                        }
+                                    } else {
+                                        //stays queued for the next flush
+                                        synchronized (OfflineCloudQueue.this) {
+                                            failed++;
+                                        }
+                                    }
+                                    finishOne(file);
+                                }
+                            });
+                        }
+                    });
+                }
+                updateDepth();
+            }
+        });
+    }
+
+    private void complete(File file, Map<String, Object> record, Map<String, Object> response, Listener listener) {
+        String recordId = String.valueOf(record.get("id"));
+        record.remove("request");
+        record.put("completedAt", System.currentTimeMillis());
+        record.put("response", response);
+        try {
+            write(new File(resultsDir, file.getName()), record);
+        } catch (IOException e) {
+            synchronized (this) {
+                writeFailures++;
+            }
+        }
+        file.delete();
+        synchronized (this) {
+            flushed++;
+        }
+        flushCompleted++;
+        evict(resultsDir, false);
+        finishOne(file);
+        listener.onResult(recordId, response);
+    }
+
+    private void finishOne(File file) {
+        inFlight.remove(file.getName());
+        updateDepth();
+        if (--flushRemaining == 0 && inFlight.isEmpty()) {
+            long nanos = System.nanoTime() - flushStart;
+            flushStats.record(nanos);
+            synchronized (this) {
+                lastFlushPerSecond = flushCompleted / (nanos / 1e9);
+            }
+        }
+    }
+
+    //a closed batcher or an unreachable service is worth another flush, a refused request is not
+    private static boolean isRejection(Exception e) {
+        return e instanceof CloudVisionException && !((CloudVisionException) e).isTransient();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> requestOf(Map<String, Object> record) {
+        return (Map<String, Object>) record.get("request");
+    }
+
+    //the merged record of a flushed request, null if it is unknown or still pending
+    public Map<String, Object> readResult(String recordId) {
+        for (File file : sortedFiles(resultsDir)) {
+            try {
+                Map<String, Object> record = read(file);
+                if (recordId.equals(record.get("id")))
+                    return record;
+            } catch (Exception e) {
+                //skip records that cannot be read
+            }
+        }
+        return null;
+    }
+
+    private long nextSequence() {
+        if (nextSequence < 0) {
+            nextSequence = 0;
+            for (File file : sortedFiles(pendingDir)) {
+                nextSequence = Math.max(nextSequence, sequenceOf(file) + 1);
+            }
+            for (File file : sortedFiles(resultsDir)) {
+                nextSequence = Math.max(nextSequence, sequenceOf(file) + 1);
+            }
+        }
+        return nextSequence++;
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    //drops the oldest files until the directory is within both bounds, requests on their way are kept
+    private void evict(File dir, boolean countAsEvicted) {
+        File[] files = sortedFiles(dir);
+        long bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+        }
+        int count = files.length;
+        for (int i = 0; i < files.length && (count > maxEntries || bytes > maxBytes); i++) {
+            if (inFlight.contains(files[i].getName()) && dir == pendingDir)
+                continue;
+            long length = files[i].length();
+            if (files[i].delete()) {
+                count--;
+                bytes -= length;
+                if (countAsEvicted) {
+                    synchronized (this) {
+                        evicted++;
+                    }
+                }
+            }
+        }
+        if (dir == pendingDir) {
+            synchronized (this) {
+                depth = count;
+                depthBytes = bytes;
+            }
+        }
+    }
+
+    private void updateDepth() {
+        File[] files = sortedFiles(pendingDir);
+        long bytes = 0;
+        for (File file : files) {
+            bytes += file.length();
+        }
+        synchronized (this) {
+            depth = files.length;
+            depthBytes = bytes;
+        }
+    }
+
+    private static File[] sortedFiles(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return new File[0];
+        List<File> json = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX))
+                json.add(file);
+        }
+        File[] sorted = json.toArray(new File[0]);
+        //zero padded sequence numbers sort oldest first by name
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    //written to a temporary file first so a crash never leaves half a record behind
+    private static void write(File file, Map<String, Object> record) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(temporary), UTF_8);
+        try {
+            CloudVisionDecoder.GSON.toJson(record, writer);
+        } finally {
+            writer.close();
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Could not move " + temporary + " to " + file);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> read(File file) throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(file), UTF_8);
+        try {
+            Map<String, Object> record = CloudVisionDecoder.GSON.fromJson(reader, Map.class);
+            if (record == null || !(record.get("request") instanceof Map || record.containsKey("response")))
+                throw new IOException("Malformed record " + file);
+            return record;
+        } finally {
+            reader.close();
+        }
+    }
+
+    //requests waiting on disk, including those being sent
+    public synchronized int getDepth() {
+        return depth;
+    }
+
+    public synchronized long getDepthBytes() {
+        return depthBytes;
+    }
+
+    public synchronized long getEnqueued() {
+        return enqueued;
+    }
+
+    //dropped unsent to stay within the bounds
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    public synchronized long getFlushed() {
+        return flushed;
+    }
+
+    //flush attempts that failed transiently, the request stayed queued
+    public synchronized long getFailed() {
+        return failed;
+    }
+
+    //dropped because the service refused the request itself
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    //requests or results that could not be written to disk
+    public synchronized long getWriteFailures() {
+        return writeFailures;
+    }
+
+    //requests per second completed by the last flush
+    public synchronized double getLastFlushThroughput() {
+        return lastFlushPerSecond;
+    }
+
+    //time from the start of a flush until its last request was answered
+    public LatencyStats getFlushStats() {
+        return flushStats;
+    }
+
+    public void close() {
+        executor.shutdown();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "OfflineCloudQueue {depth=%d (%dB) enqueued=%d evicted=%d flushed=%d failed=%d rejected=%d writeFailures=%d %.1f/s flush %s}",
+                depth, depthBytes, enqueued, evicted, flushed, failed, rejected, writeFailures, lastFlushPerSecond, flushStats);
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.garbageclassifier;
+
+//Anything the fused preprocessor can read packed ARGB pixel rows from
+public interface PixelRowSource {
+
+    int getWidth();
+
+    int getHeight();
+
+    //copies `width` pixels of row y, starting at column x, into dst[0..width)
+    void getRow(int[] dst, int x, int y, int width);
+}
@@ -0,0 +1,209 @@
+package com.example.garbageclassifier;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+//Rejects frames that are too blurred or too badly exposed to be worth classifying. Works on a
+//small luma grid whose cells are box averages of the image: sharpness is the variance of its
+//Laplacian, exposure comes from its histogram. Averaging keeps blur finer than a cell visible
+//and noise from aliasing into sharpness, so one threshold fits any source resolution.
+//The grid and histogram are reused, a check allocates nothing. Thread safe.
+public class QualityPrefilter {
+
+    public enum Verdict { OK, BLURRED, UNDEREXPOSED, OVEREXPOSED }
+
+    public static final int GRID_WIDTH = 160;
+    public static final int GRID_HEIGHT = 120;
+    //luma at or below DARK_LEVEL, or at or above BRIGHT_LEVEL, counts as clipped
+    private static final int DARK_LEVEL = 24;
+    private static final int BRIGHT_LEVEL = 232;
+
+    public static final float DEFAULT_MIN_SHARPNESS = 100f;
+    public static final int DEFAULT_MIN_MEAN_LUMA = 45;
+    public static final int DEFAULT_MAX_MEAN_LUMA = 215;
+    public static final float DEFAULT_MAX_CLIPPED_FRACTION = 0.6f;
+
+    private final float minSharpness;
+    private final int minMeanLuma;
+    private final int maxMeanLuma;
+    private final float maxClippedFraction;
+
+    private final int[] grid = new int[GRID_WIDTH * GRID_HEIGHT];
+    private final int[] histogram = new int[256];
+    private int[] row = new int[0];
+    //grid column of each image column, and how many image columns each grid column averages
+    private int[] columnCell = new int[0];
+    private final int[] columnCount = new int[GRID_WIDTH];
+    private final int[] cellSums = new int[GRID_WIDTH];
+    private int gridWidth, gridHeight;
+    private float lastSharpness;
+    private int lastMeanLuma;
+
+    private final LatencyStats costStats = new LatencyStats(256);
+    private long checks, blurred, underexposed, overexposed;
+
+    public QualityPrefilter() {
+        this(DEFAULT_MIN_SHARPNESS, DEFAULT_MIN_MEAN_LUMA, DEFAULT_MAX_MEAN_LUMA, DEFAULT_MAX_CLIPPED_FRACTION);
+    }
+
+    //minSharpness is the lowest Laplacian variance accepted; maxClippedFraction is the largest
+    //share of the image that may be crushed to black or blown out to white
+    public QualityPrefilter(float minSharpness, int minMeanLuma, int maxMeanLuma, float maxClippedFraction) {
+        this.minSharpness = minSharpness;
+        this.minMeanLuma = minMeanLuma;
+        this.maxMeanLuma = maxMeanLuma;
+        this.maxClippedFraction = maxClippedFraction;
+    }
+
+    //a camera frame's Y plane
+    public synchronized Verdict check(ByteBuffer yPlane, int width, int height, int rowStride, int pixelStride) {
+        long start = System.nanoTime();
+        sizeGrid(width, height);
+        int gy = 0, rows = 0;
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * rowStride;
+            for (int x = 0; x < width; x++) {
+                cellSums[columnCell[x]] += yPlane.get(rowOffset + x * pixelStride) & 0xFF;
+            }
+            rows++;
+            if ((y + 1) * gridHeight / height != gy || y == height - 1) {
+                finishGridRow(gy++, rows);
+                rows = 0;
+            }
+        }
+        return judge(start);
+    }
+
+    //any ARGB image, e.g. a decoded photo through BitmapRowSource
+    public synchronized Verdict check(PixelRowSource source) {
+        long start = System.nanoTime();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        sizeGrid(width, height);
+        if (row.length < width)
+            row = new int[width];
+        int gy = 0, rows = 0;
+        for (int y = 0; y < height; y++) {
+            source.getRow(row, 0, y, width);
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                //BT.601 luma scaled by 256
+                cellSums[columnCell[x]] += (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+            }
+            rows++;
+            if ((y + 1) * gridHeight / height != gy || y == height - 1) {
+                finishGridRow(gy++, rows);
+                rows = 0;
+            }
+        }
+        return judge(start);
+    }
+
+    //images smaller than the grid are read pixel for pixel
+    private void sizeGrid(int width, int height) {
+        gridWidth = Math.min(GRID_WIDTH, width);
+        gridHeight = Math.min(GRID_HEIGHT, height);
+        if (columnCell.length < width)
+            columnCell = new int[width];
+        Arrays.fill(columnCount, 0, gridWidth, 0);
+        for (int x = 0; x < width; x++) {
+            int cell = x * gridWidth / width;
+            columnCell[x] = cell;
+            columnCount[cell]++;
+        }
+        Arrays.fill(cellSums, 0, gridWidth, 0);
+    }
+
+    //the image rows summed into cellSums make up grid row gy
+    private void finishGridRow(int gy, int rows) {
+        int index = gy * gridWidth;
+        for (int gx = 0; gx < gridWidth; gx++) {
+            grid[index + gx] = cellSums[gx] / (columnCount[gx] * rows);
+            cellSums[gx] = 0;
+        }
+    }
+
+    private Verdict judge(long start) {
+        int count = gridWidth * gridHeight;
+        Arrays.fill(histogram, 0);
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            histogram[grid[i]]++;
+            sum += grid[i];
+        }
+        int dark = 0, bright = 0;
+        for (int level = 0; level <= DARK_LEVEL; level++)
+            dark += histogram[level];
+        for (int level = BRIGHT_LEVEL; level < 256; level++)
+            bright += histogram[level];
+        lastMeanLuma = (int) (sum / count);
+        lastSharpness = laplacianVariance();
+
+        Verdict verdict;
+        if (lastMeanLuma < minMeanLuma || dark > maxClippedFraction * count)
+            verdict = Verdict.UNDEREXPOSED;
+        else if (lastMeanLuma > maxMeanLuma || bright > maxClippedFraction * count)
+            verdict = Verdict.OVEREXPOSED;
+        else if (lastSharpness < minSharpness)
+            verdict = Verdict.BLURRED;
+        else
+            verdict = Verdict.OK;
+
+        checks++;
+        if (verdict == Verdict.BLURRED) blurred++;
+        else if (verdict == Verdict.UNDEREXPOSED) underexposed++;
+        else if (verdict == Verdict.OVEREXPOSED) overexposed++;
+        costStats.record(System.nanoTime() - start);
+        return verdict;
+    }
+
+    //variance of the 4-neighbour Laplacian over the grid interior, low when edges are smeared
+    private float laplacianVariance() {
+        if (gridWidth < 3 || gridHeight < 3)
+            return Float.POSITIVE_INFINITY;
+        long sum = 0, sumOfSquares = 0;
+        for (int y = 1; y < gridHeight - 1; y++) {
+            int index = y * gridWidth + 1;
+            for (int x = 1; x < gridWidth - 1; x++, index++) {
+                int laplacian = grid[index - 1] + grid[index + 1] + grid[index - gridWidth] + grid[index + gridWidth] - 4 * grid[index];
+                sum += laplacian;
+                sumOfSquares += laplacian * laplacian;
+            }
+        }
+        int n = (gridWidth - 2) * (gridHeight - 2);
+        double mean = sum / (double) n;
+        return (float) (sumOfSquares / (double) n - mean * mean);
+    }
+
+    //measurements of the last check, for tuning the thresholds
+    public synchronized float getLastSharpness() {
+        return lastSharpness;
+    }
+
+    public synchronized int getLastMeanLuma() {
+        return lastMeanLuma;
+    }
+
+    public LatencyStats getCostStats() {
+        return costStats;
+    }
+
+    public synchronized long getCheckCount() {
+        return checks;
+    }
+
+    public synchronized long getRejectedCount() {
+        return blurred + underexposed + overexposed;
+    }
+
+    public synchronized float getRejectionRate() {
+        return checks == 0 ? 0f : getRejectedCount() / (float) checks;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "QualityPrefilter {checks=%d, rejected=%.0f%% (blurred=%d, dark=%d, bright=%d), cost %s}",
+                checks, getRejectionRate() * 100, blurred, underexposed, overexposed, costStats);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.garbageclassifier;
+
+//One label and its confidence, shared by every classification engine. Immutable.
+public final class Recognition implements Comparable<Recognition> {
+
+    private final String name;
+    private final float confidence;
+
+    public Recognition(String name, float confidence) {
+        this.name = name;
+        this.confidence = confidence;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public float getConfidence() {
+        return confidence;
+    }
+
+    @Override
+    public String toString() {
+        return "Recognition {" + "name=" + name + ", confidence=" + confidence + '}';
+    }
+
+    //highest confidence first
+    @Override
+    public int compareTo(Recognition o) {
+        return Float.compare(o.confidence, this.confidence);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.garbageclassifier;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+//Wraps a transport with one deadline per call, jittered exponential retries for transient
+//errors and a circuit breaker. Every attempt, and the backoff before it, has to fit in what
+//is left of the call's deadline. Each attempt reports its outcome to the breaker; errors that
+//are not transient count as the service being up.
+public class ResilientCloudVisionTransport implements CloudVisionTransport {
+
+    private final CloudVisionTransport delegate;
+    private final RetryPolicy retryPolicy;
+    private final CircuitBreaker breaker;
+    private final long deadlineMillis;
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cloud-vision-call");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    //guarded by this
+    private long calls, attempts, retries, deadlinesExceeded, failures;
+
+    public ResilientCloudVisionTransport(CloudVisionTransport delegate, RetryPolicy retryPolicy,
+                                         CircuitBreaker breaker, long deadlineMillis) {
+        this.delegate = delegate;
+        this.retryPolicy = retryPolicy;
+        this.breaker = breaker;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    @Override
+    public Map<String, Object> annotate(final Map<String, Object> batchRequest) throws Exception {
+        synchronized (this) {
+            calls++;
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                synchronized (this) {
+                    failures++;
+                }
+                throw new CircuitOpenException("Cloud Vision circuit is open: " + breaker);
+            }
+            synchronized (this) {
+                attempts++;
+            }
+            boolean settled = false;
+            try {
+                Map<String, Object> result = callWithDeadline(batchRequest, deadline - System.nanoTime());
+                breaker.recordSuccess();
+                settled = true;
+                return result;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                boolean retryable = retryPolicy.isRetryable(e);
+                if (retryable)
+                    breaker.recordFailure();
+                else
+                    breaker.recordSuccess();
+                settled = true;
+                long delayMillis = retryPolicy.delayMillis(attempt);
+                //no point in backing off for an attempt that could not finish in time
+                boolean outOfTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) >= deadline;
+                if (!retryable || attempt >= retryPolicy.getMaxAttempts() || outOfTime) {
+                    synchronized (this) {
+                        failures++;
+                    }
+                    throw e;
+                }
+                synchronized (this) {
+                    retries++;
+                }
+                Thread.sleep(delayMillis);
+            } finally {
+                //an interrupted half-open trial would otherwise keep the breaker refusing for good
+                if (!settled)
+                    breaker.release();
+            }
+        }
+    }
+
+    private Map<String, Object> callWithDeadline(final Map<String, Object> batchRequest, long remainingNanos) throws Exception {
+        Future<Map<String, Object>> future = executor.submit(new Callable<Map<String, Object>>() {
+            @Override
+            public Map<String, Object> call() throws Exception {
+                return delegate.annotate(batchRequest);
+            }
+        });
+        try {
+            return future.get(remainingNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            synchronized (this) {
+                deadlinesExceeded++;
+            }
+            throw new TimeoutException("No answer within the call's " + deadlineMillis + "ms deadline");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    public synchronized long getCalls() {
+        return calls;
+    }
+
+    public synchronized long getAttempts() {
+        return attempts;
+    }
+
+    public synchronized long getRetries() {
+        return retries;
+    }
+
+    public synchronized long getDeadlinesExceeded() {
+        return deadlinesExceeded;
+    }
+
+    //calls that failed after all their retries, or were refused by the breaker
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "ResilientCloudVisionTransport {calls=%d attempts=%d retries=%d deadlines=%d failures=%d %s}",
+                calls, attempts, retries, deadlinesExceeded, failures, breaker);
+    }
+}
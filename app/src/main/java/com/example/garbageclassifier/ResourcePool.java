@@ -0,0 +1,84 @@
+package com.example.garbageclassifier;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+//A fixed set of resources that callers borrow one at a time and give back. Closing fails every
+//borrower still waiting, then waits for the borrowed resources to come back before closing them.
+public class ResourcePool<T> {
+
+    public interface Closer<T> {
+        void close(T resource);
+    }
+
+    private final List<T> resources;
+    private final ArrayDeque<T> idle;
+    private int waiting;
+    private boolean closed;
+
+    public ResourcePool(List<T> resources) {
+        if (resources.isEmpty())
+            throw new IllegalArgumentException("A pool needs at least one resource");
+        this.resources = new ArrayList<>(resources);
+        idle = new ArrayDeque<>(resources);
+    }
+
+    public int size() {
+        return resources.size();
+    }
+
+    //callers currently blocked waiting for a free resource
+    public synchronized int getWaitingCount() {
+        return waiting;
+    }
+
+    //an idle resource without waiting, or null
+    public synchronized T tryBorrow() {
+        if (closed)
+            throw new IllegalStateException("Pool is closed");
+        return idle.poll();
+    }
+
+    public synchronized T borrow() throws InterruptedException {
+        while (true) {
+            if (closed)
+                throw new IllegalStateException("Pool is closed");
+            T resource = idle.poll();
+            if (resource != null)
+                return resource;
+            waiting++;
+            try {
+                wait();
+            } finally {
+                waiting--;
+            }
+        }
+    }
+
+    public synchronized void giveBack(T resource) {
+        idle.add(resource);
+        notifyAll();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    //in-flight work finishes first, nothing is closed under a borrower
+    public void close(Closer<T> closer) throws InterruptedException {
+        synchronized (this) {
+            if (closed)
+                return;
+            closed = true;
+            notifyAll();
+            while (idle.size() < resources.size()) {
+                wait();
+            }
+            idle.clear();
+        }
+        for (T resource : resources) {
+            closer.close(resource);
+        }
+    }
+}
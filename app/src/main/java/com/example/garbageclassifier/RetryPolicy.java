@@ -0,0 +1,47 @@
+package com.example.garbageclassifier;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeoutException;
+
+//Exponential backoff with full jitter: before retry n the caller sleeps a random time between
+//zero and min(maxDelay, baseDelay * 2^n), so clients that failed together do not retry together
+public class RetryPolicy {
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 200, 2000);
+    public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0);
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random = new Random();
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be at least 1, was " + maxAttempts);
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    //delay before the retry that follows failed attempt number `attempt` (1 based)
+    public long delayMillis(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        if (ceiling <= 0)
+            return 0;
+        synchronized (random) {
+            return (long) (random.nextDouble() * ceiling);
+        }
+    }
+
+    //network errors, deadlines and transient answers from the service
+    public boolean isRetryable(Exception e) {
+        if (e instanceof CloudVisionException)
+            return ((CloudVisionException) e).isTransient();
+        return e instanceof IOException || e instanceof TimeoutException;
+    }
+}
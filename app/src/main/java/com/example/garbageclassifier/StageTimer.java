@@ -0,0 +1,46 @@
+package com.example.garbageclassifier;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+//Times consecutive named stages of one operation, e.g. load -> warm up, or decode -> infer
+public class StageTimer {
+
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private final long startNanos;
+    private long lastNanos;
+
+    public StageTimer() {
+        startNanos = System.nanoTime();
+        lastNanos = startNanos;
+    }
+
+    //closes the stage that started at the previous mark (or at construction)
+    public synchronized long mark(String stage) {
+        long now = System.nanoTime();
+        long elapsed = now - lastNanos;
+        stageNanos.put(stage, elapsed);
+        lastNanos = now;
+        return elapsed;
+    }
+
+    public synchronized long getStageNanos(String stage) {
+        Long nanos = stageNanos.get(stage);
+        return nanos == null ? 0 : nanos;
+    }
+
+    public synchronized long getTotalNanos() {
+        return lastNanos - startNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> stage : stageNanos.entrySet()) {
+            builder.append(stage.getKey()).append('=')
+                    .append(String.format(Locale.US, "%.1fms", stage.getValue() / 1e6)).append(' ');
+        }
+        return builder.append(String.format(Locale.US, "total=%.1fms", getTotalNanos() / 1e6)).toString();
+    }
+}
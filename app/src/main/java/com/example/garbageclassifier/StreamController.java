@@ -0,0 +1,160 @@
+package com.example.garbageclassifier;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+//Decides which frames of a live stream are worth classifying and steadies the labels shown.
+//A frame is only classified when its luma thumbnail differs enough from the last classified one,
+//or while the answer for the current scene is still settling. Category scores are smoothed with
+//an exponential moving average, and once one category has been confidently on top for
+//lockFrames inferences the answer locks in and a still scene is not classified again.
+//Thread safe, frames and results usually arrive on different threads.
+public class StreamController {
+
+    public static final float DEFAULT_SMOOTHING = 0.4f;
+    public static final int DEFAULT_LOCK_FRAMES = 3;
+    public static final int DEFAULT_MAX_STILL_INFERENCES = 6;
+    //mean luma change, out of 255, that counts as a new scene; camera noise stays well below it
+    public static final float DEFAULT_CHANGE_THRESHOLD = 10f;
+
+    private final ConfidencePolicy policy;
+    private final float smoothing;
+    private final int lockFrames;
+    private final int maxStillInferences;
+    private final float changeThreshold;
+
+    private final LumaThumbnail current = new LumaThumbnail(32, 24);
+    private final LumaThumbnail reference = new LumaThumbnail(32, 24);
+    private final float[] smoothed = new float[CategoryIndex.CATEGORY_COUNT];
+    private boolean hasScores;
+    private int inferencesSinceChange;
+    private int dominantCategory = CategoryIndex.NO_CATEGORY;
+    private int dominantStreak;
+    private boolean locked;
+
+    private long frames, skipped, inferences, sceneChanges, locks;
+    private long firstFrameNanos, lastFrameNanos;
+
+    public StreamController() {
+        this(ConfidencePolicy.DEFAULT, DEFAULT_SMOOTHING, DEFAULT_LOCK_FRAMES, DEFAULT_MAX_STILL_INFERENCES, DEFAULT_CHANGE_THRESHOLD);
+    }
+
+    //smoothing is the weight of the newest scores, 1 turns smoothing off
+    public StreamController(ConfidencePolicy policy, float smoothing, int lockFrames, int maxStillInferences, float changeThreshold) {
+        if (smoothing <= 0f || smoothing > 1f)
+            throw new IllegalArgumentException("smoothing must be in (0, 1], was " + smoothing);
+        this.policy = policy;
+        this.smoothing = smoothing;
+        this.lockFrames = Math.max(1, lockFrames);
+        this.maxStillInferences = Math.max(this.lockFrames, maxStillInferences);
+        this.changeThreshold = changeThreshold;
+    }
+
+    //true when this frame should be classified, its result then has to reach onClassification
+    public boolean onFrame(ByteBuffer yPlane, int width, int height, int rowStride, int pixelStride) {
+        return onFrame(yPlane, width, height, rowStride, pixelStride, System.nanoTime());
+    }
+
+    synchronized boolean onFrame(ByteBuffer yPlane, int width, int height, int rowStride, int pixelStride, long nanos) {
+        if (frames++ == 0)
+            firstFrameNanos = nanos;
+        lastFrameNanos = nanos;
+        current.sample(yPlane, width, height, rowStride, pixelStride);
+
+        //compared against the last classified frame, so a slow pan still adds up to a change
+        if (reference.isEmpty() || current.difference(reference) > changeThreshold) {
+            if (!reference.isEmpty())
+                sceneChanges++;
+            //the old object's scores would make the new label lag, or lock onto the old category
+            locked = false;
+            hasScores = false;
+            dominantCategory = CategoryIndex.NO_CATEGORY;
+            dominantStreak = 0;
+            inferencesSinceChange = 0;
+        } else if (locked || inferencesSinceChange >= maxStillInferences) {
+            //nothing new to learn from the same scene
+            skipped++;
+            return false;
+        }
+        reference.copyFrom(current);
+        inferencesSinceChange++;
+        inferences++;
+        return true;
+    }
+
+    //folds a frame's result into the moving average and returns it with the smoothed category scores
+    public synchronized Classification onClassification(Classification classification) {
+        for (int c = 0; c < smoothed.length; c++) {
+            float score = classification.getCategoryScore(c);
+            smoothed[c] = hasScores ? smoothing * score + (1f - smoothing) * smoothed[c] : score;
+        }
+        hasScores = true;
+        Classification result = new Classification(classification.getEngine(), classification.getLabels(), smoothed, classification.getLatencyNanos());
+
+        int top = result.getTopCategory();
+        if (policy.isConfident(result)) {
+            dominantStreak = top == dominantCategory ? dominantStreak + 1 : 1;
+            dominantCategory = top;
+        } else {
+            dominantStreak = 0;
+            dominantCategory = CategoryIndex.NO_CATEGORY;
+        }
+        if (!locked && dominantStreak >= lockFrames) {
+            locked = true;
+            locks++;
+        }
+        return result;
+    }
+
+    public synchronized boolean isLocked() {
+        return locked;
+    }
+
+    //the category the stream locked onto, NO_CATEGORY while it is still settling
+    public synchronized int getLockedCategory() {
+        return locked ? dominantCategory : CategoryIndex.NO_CATEGORY;
+    }
+
+    public synchronized long getFrameCount() {
+        return frames;
+    }
+
+    public synchronized long getSkippedCount() {
+        return skipped;
+    }
+
+    public synchronized long getInferenceCount() {
+        return inferences;
+    }
+
+    public synchronized long getSceneChangeCount() {
+        return sceneChanges;
+    }
+
+    //share of frames that did not need the model
+    public synchronized float getSkipRatio() {
+        return frames == 0 ? 0f : skipped / (float) frames;
+    }
+
+    //inferences actually run per second of stream, skipped frames included in the time
+    public synchronized double getInferencesPerSecond() {
+        long elapsed = lastFrameNanos - firstFrameNanos;
+        return elapsed <= 0 ? 0 : (inferences - 1) * 1e9 / elapsed;
+    }
+
+    //forgets the scene and the smoothed scores, e.g. when the camera is rebound
+    public synchronized void reset() {
+        reference.clear();
+        hasScores = false;
+        locked = false;
+        dominantStreak = 0;
+        dominantCategory = CategoryIndex.NO_CATEGORY;
+        inferencesSinceChange = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "StreamController {frames=%d, skipped=%.0f%%, %.1f inferences/s, sceneChanges=%d, locks=%d, locked=%s}",
+                frames, getSkipRatio() * 100, getInferencesPerSecond(), sceneChanges, locks, CategoryIndex.nameOf(getLockedCategory()));
+    }
+}
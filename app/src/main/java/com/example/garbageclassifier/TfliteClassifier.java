@@ -0,0 +1,90 @@
+package com.example.garbageclassifier;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+//The on-device quantized MobileNet behind the Classifier interface. Inference runs on one
+//background thread, in request order, with the shared classifier from ClassifierHolder.
+public class TfliteClassifier implements Classifier {
+
+    public static final String NAME = "tflite";
+
+    private final ClassifierHolder holder;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    //only touched on the executor thread
+    private final ClassificationResult result = new ClassificationResult(ImageClassifier.MAX_SIZE);
+    private final LatencyStats latencyStats = new LatencyStats(256);
+
+    public TfliteClassifier(ClassifierHolder holder) {
+        this.holder = holder;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public LatencyStats getLatencyStats() {
+        return latencyStats;
+    }
+
+    @Override
+    public Task<Classification> classify(final Bitmap bitmap, final ImageOrientation orientation, @Nullable CancellationToken cancellationToken) {
+        if (executor.isShutdown())
+            return Tasks.forException(new IllegalStateException("TfliteClassifier is closed"));
+        final TaskCompletionSource<Classification> source = Classifiers.newSource(cancellationToken);
+        final long start = System.nanoTime();
+        //close() may shut the executor down between the check above and the dispatch below
+        Executor guarded = new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                try {
+                    executor.execute(command);
+                } catch (RejectedExecutionException e) {
+                    source.trySetException(new IllegalStateException("TfliteClassifier is closed", e));
+                }
+            }
+        };
+        holder.getClassifier().addOnCompleteListener(guarded, new OnCompleteListener<ImageClassifier>() {
+            @Override
+            public void onComplete(@NonNull Task<ImageClassifier> task) {
+                //cancelled or timed out while waiting, skip the inference
+                if (source.getTask().isComplete())
+                    return;
+                if (!task.isSuccessful()) {
+                    source.trySetException(task.getException());
+                    return;
+                }
+                try {
+                    ImageClassifier classifier = task.getResult();
+                    classifier.classifyImage(bitmap, orientation, result);
+                    long latency = System.nanoTime() - start;
+                    latencyStats.record(latency);
+                    source.trySetResult(classifier.toClassification(NAME, result, latency));
+                } catch (RuntimeException e) {
+                    source.trySetException(e);
+                }
+            }
+        });
+        return source.getTask();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.garbageclassifier;
+
+//Fixed-size min-heap of (output index, raw quantized score) pairs.
+//Keeps the K largest scores seen so far without boxing or sorting the whole output.
+public class TopKSelector {
+
+    private final int[] heapIndices;
+    private final int[] heapValues;
+    private int limit;
+    private int size;
+
+    public TopKSelector(int capacity) {
+        heapIndices = new int[capacity];
+        heapValues = new int[capacity];
+    }
+
+    public int capacity() {
+        return heapIndices.length;
+    }
+
+    public void reset(int k) {
+        limit = Math.min(k, heapIndices.length);
+        size = 0;
+    }
+
+    public void offer(int index, int value) {
+        if (size < limit) {
+            int child = size++;
+            heapIndices[child] = index;
+            heapValues[child] = value;
+            //sift up
+            while (child > 0) {
+                int parent = (child - 1) >> 1;
+                if (heapValues[parent] <= heapValues[child]) break;
+                swap(parent, child);
+                child = parent;
+            }
+        } else if (limit > 0 && value > heapValues[0]) {
+            heapIndices[0] = index;
+            heapValues[0] = value;
+            siftDown(0, size);
+        }
+    }
+
+    //heap sort in place, leaves the entries ordered from highest to lowest score
+    public void sortDescending() {
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int indexAt(int rank) {
+        return heapIndices[rank];
+    }
+
+    public int valueAt(int rank) {
+        return heapValues[rank];
+    }
+
+    private void siftDown(int parent, int end) {
+        while (true) {
+            int smallest = parent;
+            int left = 2 * parent + 1;
+            int right = left + 1;
+            if (left < end && heapValues[left] < heapValues[smallest]) smallest = left;
+            if (right < end && heapValues[right] < heapValues[smallest]) smallest = right;
+            if (smallest == parent) return;
+            swap(parent, smallest);
+            parent = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int index = heapIndices[a];
+        heapIndices[a] = heapIndices[b];
+        heapIndices[b] = index;
+        int value = heapValues[a];
+        heapValues[a] = heapValues[b];
+        heapValues[b] = value;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.garbageclassifier;
+
+import java.nio.ByteBuffer;
+
+//Reads packed ARGB rows straight from the Y, U and V planes of a YUV_420_888 frame, BT.601 full
+//range. Only the rows the fused preprocessor samples are converted, so a frame never goes
+//through an intermediate bitmap. Holds references to the planes only, nothing is allocated
+//per frame. Works for both planar (I420) and semi-planar (NV12/NV21) layouts through the strides.
+public class YuvRowSource implements PixelRowSource {
+
+    private ByteBuffer yPlane, uPlane, vPlane;
+    private int yRowStride, yPixelStride;
+    private int uvRowStride, uvPixelStride;
+    private int width, height;
+
+    //U and V must share their strides, as YUV_420_888 guarantees
+    public YuvRowSource setPlanes(int width, int height,
+                                  ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                                  ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride) {
+        this.width = width;
+        this.height = height;
+        this.yPlane = yPlane;
+        this.yRowStride = yRowStride;
+        this.yPixelStride = yPixelStride;
+        this.uPlane = uPlane;
+        this.vPlane = vPlane;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        return this;
+    }
+
+    //drops the plane references once the frame is handed back to the camera
+    public void clear() {
+        yPlane = uPlane = vPlane = null;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void getRow(int[] dst, int x, int y, int width) {
+        int yRow = y * yRowStride;
+        int uvRow = (y >> 1) * uvRowStride;
+        int chroma = -1;
+        int red = 0, green = 0, blue = 0;
+        for (int i = 0; i < width; i++) {
+            int column = x + i;
+            //two neighbouring pixels share one chroma sample
+            if (column >> 1 != chroma) {
+                chroma = column >> 1;
+                int uvOffset = uvRow + chroma * uvPixelStride;
+                int u = (uPlane.get(uvOffset) & 0xFF) - 128;
+                int v = (vPlane.get(uvOffset) & 0xFF) - 128;
+                //coefficients scaled by 1024
+                red = (1436 * v) >> 10;
+                green = (352 * u + 731 * v) >> 10;
+                blue = (1815 * u) >> 10;
+            }
+            int luma = yPlane.get(yRow + column * yPixelStride) & 0xFF;
+            dst[i] = 0xFF000000 | clamp(luma + red) << 16 | clamp(luma - green) << 8 | clamp(luma + blue);
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.garbageclassifier;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BackendTunerTest {
+
+    private static class MemoryStore implements BackendTuner.Store {
+        final Map<String, String> values = new HashMap<>();
+
+        @Override
+        public String load(String deviceKey) {
+            return values.get(deviceKey);
+        }
+
+        @Override
+        public void save(String deviceKey, String backendKey) {
+            values.put(deviceKey, backendKey);
+        }
+
+        @Override
+        public void clear(String deviceKey) {
+            values.remove(deviceKey);
+        }
+    }
+
+    private static class FakeBenchmark implements BackendTuner.Benchmark {
+        int calls;
+
+        @Override
+        public long measureNanos(InferenceBackend backend) {
+            calls++;
+            if (backend.usesDelegate())
+                throw new UnsupportedOperationException("no delegates on the JVM");
+            //more threads are faster, XNNPACK a bit more so
+            long nanos = 40_000_000L / backend.getNumThreads();
+            return backend.getType() == InferenceBackend.Type.XNNPACK ? nanos / 2 : nanos;
+        }
+    }
+
+    @Test
+    public void picksFastestAndSkipsFailingDelegates() {
+        MemoryStore store = new MemoryStore();
+        BackendTuner tuner = new BackendTuner(new FakeBenchmark(), store, "device");
+
+        InferenceBackend selected = tuner.select(InferenceBackend.candidates(8, true));
+
+        assertEquals(new InferenceBackend(InferenceBackend.Type.XNNPACK, 4), selected);
+        assertEquals("XNNPACK:4", store.load("device"));
+        assertFalse(tuner.getMeasurements().containsKey(new InferenceBackend(InferenceBackend.Type.GPU, 1)));
+        assertTrue(tuner.getFailures().get(new InferenceBackend(InferenceBackend.Type.GPU, 1)) instanceof UnsupportedOperationException);
+    }
+
+    @Test
+    public void reusesStoredChoiceWithoutBenchmarking() {
+        MemoryStore store = new MemoryStore();
+        store.save("device", "CPU:2");
+        FakeBenchmark benchmark = new FakeBenchmark();
+
+        InferenceBackend selected = new BackendTuner(benchmark, store, "device").select(InferenceBackend.candidates(8, true));
+
+        assertEquals(new InferenceBackend(InferenceBackend.Type.CPU, 2), selected);
+        assertEquals(0, benchmark.calls);
+    }
+
+    @Test
+    public void fallsBackToCpuWhenEverythingFails() {
+        List<InferenceBackend> delegatesOnly = Arrays.asList(
+                new InferenceBackend(InferenceBackend.Type.NNAPI, 1),
+                new InferenceBackend(InferenceBackend.Type.GPU, 1));
+
+        InferenceBackend selected = new BackendTuner(new FakeBenchmark(), new MemoryStore(), "device").select(delegatesOnly);
+
+        assertEquals(InferenceBackend.DEFAULT, selected);
+    }
+
+    @Test
+    public void keyRoundTrip() {
+        InferenceBackend backend = new InferenceBackend(InferenceBackend.Type.NNAPI, 3);
+        assertEquals(backend, InferenceBackend.fromKey(backend.toKey()));
+        assertNull(InferenceBackend.fromKey("bogus"));
+        assertNull(InferenceBackend.fromKey("CPU:zero"));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.garbageclassifier;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.Assert.*;
+
+public class Base64WriterTest {
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = (byte) (0xFB - 37 * i);
+        return bytes;
+    }
+
+    @Test
+    public void matchesTheJdkEncoderForEveryPaddingCase() {
+        for (int length = 0; length <= 5; length++) {
+            byte[] bytes = bytes(length);
+            StringBuilder out = new StringBuilder();
+            Base64Writer.append(bytes, 0, length, out);
+            assertEquals("length " + length, Base64.getEncoder().encodeToString(bytes), out.toString());
+            assertEquals(Base64Writer.encodedLength(length), out.length());
+        }
+    }
+
+    @Test
+    public void encodesASliceAndAppendsToWhatIsThere() {
+        byte[] bytes = bytes(12);
+        for (int length = 0; length <= 5; length++) {
+            StringBuilder out = new StringBuilder("prefix:");
+            Base64Writer.append(bytes, 3, length, out);
+            assertEquals("prefix:" + Base64.getEncoder().encodeToString(Arrays.copyOfRange(bytes, 3, 3 + length)), out.toString());
+        }
+    }
+}
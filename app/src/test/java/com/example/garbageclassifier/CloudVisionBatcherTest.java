@@ -0,0 +1,181 @@
+package com.example.garbageclassifier;
+
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+//Runs the batcher against a local stand-in for the callable function that labels every
+//image with its own content, or fails the ones whose content is "bad"
+public class CloudVisionBatcherTest {
+
+    private final Gson gson = new Gson();
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private volatile int status = 200;
+    private HttpServer server;
+    private CloudVisionTransport transport;
+
+    private static class Result implements CloudVisionBatcher.Callback {
+        final CountDownLatch done;
+        volatile Map<String, Object> response;
+        volatile Exception error;
+
+        Result(CountDownLatch done) {
+            this.done = done;
+        }
+
+        @Override
+        public void onResponse(Map<String, Object> response) {
+            this.response = response;
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            error = e;
+            done.countDown();
+        }
+
+        String label() {
+            List<?> labels = (List<?>) response.get("labelAnnotations");
+            return (String) ((Map<?, ?>) labels.get(0)).get("description");
+        }
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/batchAnnotateImages", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                Map<?, ?> body = gson.fromJson(new InputStreamReader(exchange.getRequestBody(), "UTF-8"), Map.class);
+                List<?> requests = (List<?>) ((Map<?, ?>) body.get("data")).get("requests");
+                batchSizes.add(requests.size());
+                List<Object> responses = new ArrayList<>();
+                for (Object request : requests) {
+                    String content = (String) ((Map<?, ?>) ((Map<?, ?>) request).get("image")).get("content");
+                    Map<String, Object> label = new HashMap<>();
+                    label.put("description", content);
+                    label.put("score", 0.9);
+                    responses.add(content.equals("bad")
+                            ? Collections.singletonMap("error", Collections.singletonMap("message", "bad image"))
+                            : Collections.singletonMap("labelAnnotations", Collections.singletonList(label)));
+                }
+                Object reply = status == 200
+                        ? Collections.singletonMap("result", Collections.singletonMap("responses", responses))
+                        : Collections.singletonMap("error", Collections.singletonMap("status", "INTERNAL"));
+                byte[] bytes = gson.toJson(reply).getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+        transport = new HttpCloudVisionTransport(
+                new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/batchAnnotateImages"), 5000);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private static Map<String, Object> request(String content) {
+        return Collections.<String, Object>singletonMap("image", Collections.singletonMap("content", content));
+    }
+
+    @Test
+    public void requestsWithinTheWindowShareCallsUpToTheCap() throws Exception {
+        CloudVisionBatcher batcher = new CloudVisionBatcher(transport, 500, 16);
+        CountDownLatch done = new CountDownLatch(20);
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Result result = new Result(done);
+            results.add(result);
+            batcher.submit(request("image-" + i), result);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 20; i++) {
+            assertNull(results.get(i).error);
+            assertEquals("image-" + i, results.get(i).label());
+        }
+        assertEquals(2, batchSizes.size());
+        assertEquals(16, (long) batchSizes.get(0));
+        assertEquals(4, (long) batchSizes.get(1));
+        assertEquals(2, batcher.getBatchesSent());
+        assertEquals(10.0, batcher.getMeanBatchSize(), 1e-9);
+        batcher.close();
+    }
+
+    @Test
+    public void anErrorInOneResponseOnlyFailsThatRequest() throws Exception {
+        CloudVisionBatcher batcher = new CloudVisionBatcher(transport, 50, 16);
+        CountDownLatch done = new CountDownLatch(3);
+        Result first = new Result(done), bad = new Result(done), last = new Result(done);
+        batcher.submit(request("first"), first);
+        batcher.submit(request("bad"), bad);
+        batcher.submit(request("last"), last);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals("first", first.label());
+        assertTrue(bad.error instanceof CloudVisionException);
+        assertFalse(((CloudVisionException) bad.error).isTransient());
+        assertEquals("last", last.label());
+        assertEquals(1, batchSizes.size());
+        batcher.close();
+    }
+
+    @Test
+    public void aFailedCallFailsTheWholeBatch() throws Exception {
+        status = 500;
+        CloudVisionBatcher batcher = new CloudVisionBatcher(transport, 50, 16);
+        CountDownLatch done = new CountDownLatch(2);
+        Result a = new Result(done), b = new Result(done);
+        batcher.submit(request("a"), a);
+        batcher.submit(request("b"), b);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertTrue(a.error instanceof CloudVisionException);
+        assertTrue(b.error instanceof CloudVisionException);
+        assertEquals(0, batcher.getBatchesSent());
+        batcher.close();
+    }
+
+    @Test
+    public void closingFailsRequestsThatWereNotSent() throws Exception {
+        CloudVisionBatcher batcher = new CloudVisionBatcher(transport, 10000, 16);
+        CountDownLatch done = new CountDownLatch(2);
+        Result pending = new Result(done);
+        batcher.submit(request("pending"), pending);
+        batcher.close();
+        Result late = new Result(done);
+        batcher.submit(request("late"), late);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertTrue(pending.error instanceof IllegalStateException);
+        assertTrue(late.error instanceof IllegalStateException);
+        assertEquals(0, batchSizes.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.garbageclassifier;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+//Responses are built as the Map/List tree the callable SDK hands back, numbers in the types it uses
+public class CloudVisionDecoderTest {
+
+    private static Map<String, Object> label(String mid, String description, Object score) {
+        Map<String, Object> label = new HashMap<>();
+        if (mid != null)
+            label.put("mid", mid);
+        if (description != null)
+            label.put("description", description);
+        if (score != null)
+            label.put("score", score);
+        label.put("topicality", 0.5);
+        return label;
+    }
+
+    @Test
+    public void decodesLabelsWhateverTheNumberType() {
+        Map<String, Object> response = Collections.<String, Object>singletonMap("labelAnnotations", Arrays.asList(
+                label("/m/05z87", "Plastic", 0.92),
+                label("/m/0dt3t", "Bottle", 1),
+                label(null, "Recycling", 0.5f)));
+
+        List<LabelAnnotation> labels = CloudVisionDecoder.decodeLabels(response);
+
+        assertEquals(3, labels.size());
+        assertEquals("/m/05z87", labels.get(0).getMid());
+        assertEquals("Plastic", labels.get(0).getDescription());
+        assertEquals(0.92f, labels.get(0).getScore(), 1e-6f);
+        assertEquals(0.5f, labels.get(0).getTopicality(), 1e-6f);
+        assertEquals(1f, labels.get(1).getScore(), 0f);
+        assertNull(labels.get(2).getMid());
+
+        List<Recognition> recognitions = CloudVisionDecoder.toRecognitions(labels);
+        assertEquals("Bottle", recognitions.get(1).getName());
+        assertEquals(1f, recognitions.get(1).getConfidence(), 0f);
+    }
+
+    @Test
+    public void skipsEntriesWithoutADescriptionAndZeroesMissingScores() {
+        Map<String, Object> response = Collections.<String, Object>singletonMap("labelAnnotations", Arrays.asList(
+                label("/m/01", null, 0.9),
+                "not a label",
+                label("/m/02", "Can", null)));
+
+        List<LabelAnnotation> labels = CloudVisionDecoder.decodeLabels(response);
+
+        assertEquals(1, labels.size());
+        assertEquals("Can", labels.get(0).getDescription());
+        assertEquals(0f, labels.get(0).getScore(), 0f);
+    }
+
+    @Test
+    public void missingOrErrorResponsesHaveNoLabels() {
+        assertTrue(CloudVisionDecoder.decodeLabels(Collections.emptyMap()).isEmpty());
+        assertTrue(CloudVisionDecoder.decodeLabels(Collections.singletonMap("labelAnnotations", "unexpected")).isEmpty());
+        Map<String, Object> error = new HashMap<>();
+        error.put("code", 3);
+        error.put("message", "Bad image data.");
+        assertTrue(CloudVisionDecoder.decodeLabels(Collections.singletonMap("error", error)).isEmpty());
+    }
+
+    @Test
+    public void readsAResponseParsedByTheSharedGson() {
+        Map<?, ?> response = CloudVisionDecoder.GSON.fromJson(
+                "{\"labelAnnotations\":[{\"mid\":\"/m/04dr76w\",\"description\":\"Glass\",\"score\":0.75}]}", Map.class);
+
+        List<LabelAnnotation> labels = CloudVisionDecoder.decodeLabels(response);
+
+        assertEquals(1, labels.size());
+        assertEquals("Glass", labels.get(0).getDescription());
+        assertEquals(0.75f, labels.get(0).getScore(), 1e-6f);
+    }
+}
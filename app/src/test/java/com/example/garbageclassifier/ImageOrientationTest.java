@@ -0,0 +1,75 @@
+package com.example.garbageclassifier;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class ImageOrientationTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 3;
+
+    //every pixel is unique, red holds x and green holds y
+    private static final PixelRowSource STORED = new PixelRowSource() {
+        @Override
+        public int getWidth() {
+            return WIDTH;
+        }
+
+        @Override
+        public int getHeight() {
+            return HEIGHT;
+        }
+
+        @Override
+        public void getRow(int[] dst, int x, int y, int width) {
+            for (int i = 0; i < width; i++)
+                dst[i] = 0xFF000000 | (x + i) << 16 | y << 8;
+        }
+    };
+
+    //stored pixel shown at (x, y) of the upright image, straight from the EXIF definitions
+    private static int[] storedPixelAt(int exif, int x, int y) {
+        switch (exif) {
+            case ImageOrientation.EXIF_FLIP_HORIZONTAL: return new int[]{WIDTH - 1 - x, y};
+            case ImageOrientation.EXIF_ROTATE_180: return new int[]{WIDTH - 1 - x, HEIGHT - 1 - y};
+            case ImageOrientation.EXIF_FLIP_VERTICAL: return new int[]{x, HEIGHT - 1 - y};
+            case ImageOrientation.EXIF_TRANSPOSE: return new int[]{y, x};
+            case ImageOrientation.EXIF_ROTATE_90: return new int[]{y, HEIGHT - 1 - x};
+            case ImageOrientation.EXIF_TRANSVERSE: return new int[]{WIDTH - 1 - y, HEIGHT - 1 - x};
+            case ImageOrientation.EXIF_ROTATE_270: return new int[]{WIDTH - 1 - y, x};
+            default: return new int[]{x, y};
+        }
+    }
+
+    @Test
+    public void everyExifOrientationIsRemappedWhileSampling() {
+        for (int exif = 1; exif <= 8; exif++) {
+            ImageOrientation orientation = ImageOrientation.fromExif(exif);
+            boolean swapped = orientation.getQuarterTurns() % 2 == 1;
+            int outputWidth = swapped ? HEIGHT : WIDTH;
+            int outputHeight = swapped ? WIDTH : HEIGHT;
+            FusedPreprocessor preprocessor = new FusedPreprocessor(outputWidth, outputHeight, FusedPreprocessor.Sampling.NEAREST);
+            ByteBuffer out = preprocessor.process(STORED, orientation);
+            for (int y = 0; y < outputHeight; y++) {
+                for (int x = 0; x < outputWidth; x++) {
+                    int[] expected = storedPixelAt(exif, x, y);
+                    int index = (y * outputWidth + x) * 3;
+                    assertEquals("exif " + exif + " x at " + x + "," + y, expected[0], out.get(index));
+                    assertEquals("exif " + exif + " y at " + x + "," + y, expected[1], out.get(index + 1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cameraRotationIsClockwise() {
+        assertEquals(ImageOrientation.fromExif(ImageOrientation.EXIF_ROTATE_90), ImageOrientation.fromRotationDegrees(90));
+        assertEquals(ImageOrientation.fromExif(ImageOrientation.EXIF_ROTATE_270), ImageOrientation.fromRotationDegrees(270));
+        assertEquals(90, ImageOrientation.fromExif(ImageOrientation.EXIF_TRANSPOSE).getRotationDegrees());
+        assertTrue(ImageOrientation.fromExif(ImageOrientation.EXIF_TRANSPOSE).isMirrored());
+        assertEquals(ImageOrientation.NORMAL, ImageOrientation.fromExif(0));
+    }
+}
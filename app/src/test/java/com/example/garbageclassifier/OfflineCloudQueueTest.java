@@ -0,0 +1,182 @@
+package com.example.garbageclassifier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OfflineCloudQueueTest {
+
+    private File directory;
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    private volatile boolean online = true;
+
+    //labels each image with its content, or fails the whole call while offline. An image whose
+    //content is "corrupt" gets an error response of its own.
+    private final CloudVisionTransport transport = new CloudVisionTransport() {
+        @Override
+        public Map<String, Object> annotate(Map<String, Object> batchRequest) throws Exception {
+            if (!online)
+                throw new IOException("offline");
+            List<?> requests = (List<?>) batchRequest.get("requests");
+            batchSizes.add(requests.size());
+            List<Object> responses = new ArrayList<>();
+            for (Object request : requests) {
+                Object content = ((Map<?, ?>) ((Map<?, ?>) request).get("image")).get("content");
+                if ("corrupt".equals(content)) {
+                    responses.add(Collections.singletonMap("error", Collections.singletonMap("message", "Bad image data")));
+                    continue;
+                }
+                Map<String, Object> label = new HashMap<>();
+                label.put("description", content);
+                label.put("score", 0.8);
+                responses.add(Collections.singletonMap("labelAnnotations", Collections.singletonList(label)));
+            }
+            return Collections.<String, Object>singletonMap("responses", responses);
+        }
+    };
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("offline-queue", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static Map<String, Object> request(String content) {
+        return Collections.<String, Object>singletonMap("image", Collections.singletonMap("content", content));
+    }
+
+    @Test
+    public void oldestEntriesAreEvictedBeyondTheBound() throws Exception {
+        OfflineCloudQueue queue = new OfflineCloudQueue(directory, 5, Long.MAX_VALUE);
+        for (int i = 0; i < 8; i++) {
+            queue.enqueue("record-" + i, request("image-" + i));
+        }
+        final Map<String, String> results = new ConcurrentHashMap<>();
+        final CountDownLatch flushed = new CountDownLatch(5);
+        CloudVisionBatcher batcher = new CloudVisionBatcher(transport, 50, 16);
+        queue.flush(batcher, new OfflineCloudQueue.Listener() {
+            @Override
+            public void onResult(String recordId, Map<String, Object> response) {
+                results.put(recordId, CloudVisionDecoder.decodeLabels(response).get(0).getDescription());
+                flushed.countDown();
+            }
+        });
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+
+        assertEquals(5, results.size());
+        for (int i = 3; i < 8; i++) {
+            assertEquals("image-" + i, results.get("record-" + i));
+        }
+        assertEquals(3, queue.getEvicted());
+        assertEquals(Collections.singletonList(5), batchSizes);
+        batcher.close();
+        queue.close();
+    }
+
+    @Test
+    public void failedFlushesKeepEntriesAndResultsAreMergedIntoTheRecord() throws Exception {
+        online = false;
+        OfflineCloudQueue queue = new OfflineCloudQueue(directory, 10, Long.MAX_VALUE);
+        queue.enqueue("a", request("bottle"));
+        queue.enqueue("b", request("can"));
+        CloudVisionBatcher batcher = new CloudVisionBatcher(transport, 20, 16);
+        OfflineCloudQueue.Listener ignore = new OfflineCloudQueue.Listener() {
+            @Override
+            public void onResult(String recordId, Map<String, Object> response) {
+                fail("nothing should be answered while offline");
+            }
+        };
+        queue.flush(batcher, ignore);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getFailed() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, queue.getFailed());
+        assertEquals(2, queue.getDepth());
+
+        //the same directory survives a restart
+        queue.close();
+        queue = new OfflineCloudQueue(directory, 10, Long.MAX_VALUE);
+        online = true;
+        final CountDownLatch flushed = new CountDownLatch(2);
+        queue.flush(batcher, new OfflineCloudQueue.Listener() {
+            @Override
+            public void onResult(String recordId, Map<String, Object> response) {
+                flushed.countDown();
+            }
+        });
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        deadline = System.currentTimeMillis() + 5000;
+        while (queue.getDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, queue.getDepth());
+        assertEquals(2, queue.getFlushed());
+        Map<String, Object> record = queue.readResult("b");
+        assertNotNull(record);
+        assertNull(record.get("request"));
+        assertEquals("can", CloudVisionDecoder.decodeLabels((Map<?, ?>) record.get("response")).get(0).getDescription());
+        batcher.close();
+        queue.close();
+    }
+
+    @Test
+    public void requestsTheServiceRefusesAreDroppedInsteadOfRequeued() throws Exception {
+        OfflineCloudQueue queue = new OfflineCloudQueue(directory, 10, Long.MAX_VALUE);
+        queue.enqueue("good", request("bottle"));
+        queue.enqueue("bad", request("corrupt"));
+        final CountDownLatch flushed = new CountDownLatch(1);
+        CloudVisionBatcher batcher = new CloudVisionBatcher(transport, 20, 16);
+        queue.flush(batcher, new OfflineCloudQueue.Listener() {
+            @Override
+            public void onResult(String recordId, Map<String, Object> response) {
+                assertEquals("good", recordId);
+                flushed.countDown();
+            }
+        });
+        assertTrue(flushed.await(5, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (queue.getDepth() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(0, queue.getDepth());
+        assertEquals(1, queue.getFlushed());
+        assertEquals(1, queue.getRejected());
+        assertEquals(0, queue.getFailed());
+        assertNull(queue.readResult("bad"));
+        batcher.close();
+        queue.close();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.garbageclassifier;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QualityPrefilterTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    //blocky random texture around `mean`, the edges are what a sharp photo has
+    private static int[] texture(int mean, int contrast) {
+        Random random = new Random(7);
+        int[] blocks = new int[(WIDTH / 8) * (HEIGHT / 8)];
+        for (int i = 0; i < blocks.length; i++)
+            blocks[i] = Math.max(0, Math.min(255, mean + random.nextInt(2 * contrast + 1) - contrast));
+        int[] luma = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                luma[y * WIDTH + x] = blocks[(y / 8) * (WIDTH / 8) + x / 8];
+        return luma;
+    }
+
+    //separable box blur, wide enough to smear the block edges over several grid samples
+    private static int[] blur(int[] luma, int radius) {
+        int[] horizontal = new int[luma.length];
+        int[] out = new int[luma.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0, n = 0;
+                for (int d = -radius; d <= radius; d++) {
+                    int sx = x + d;
+                    if (sx >= 0 && sx < WIDTH) { sum += luma[y * WIDTH + sx]; n++; }
+                }
+                horizontal[y * WIDTH + x] = sum / n;
+            }
+        }
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int sum = 0, n = 0;
+                for (int d = -radius; d <= radius; d++) {
+                    int sy = y + d;
+                    if (sy >= 0 && sy < HEIGHT) { sum += horizontal[sy * WIDTH + x]; n++; }
+                }
+                out[y * WIDTH + x] = sum / n;
+            }
+        }
+        return out;
+    }
+
+    private static QualityPrefilter.Verdict checkPlane(QualityPrefilter prefilter, int[] luma) {
+        return checkPlane(prefilter, luma, WIDTH, HEIGHT);
+    }
+
+    private static QualityPrefilter.Verdict checkPlane(QualityPrefilter prefilter, int[] luma, int width, int height) {
+        int rowStride = width + 32;
+        ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * height);
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++)
+                plane.put(y * rowStride + x, (byte) luma[y * width + x]);
+        return prefilter.check(plane, width, height, rowStride, 1);
+    }
+
+    private static QualityPrefilter.Verdict checkGrey(QualityPrefilter prefilter, final int[] luma) {
+        return prefilter.check(new PixelRowSource() {
+            @Override
+            public int getWidth() {
+                return WIDTH;
+            }
+
+            @Override
+            public int getHeight() {
+                return HEIGHT;
+            }
+
+            @Override
+            public void getRow(int[] dst, int x, int y, int width) {
+                for (int i = 0; i < width; i++) {
+                    int l = luma[y * WIDTH + x + i];
+                    dst[i] = 0xFF000000 | l << 16 | l << 8 | l;
+                }
+            }
+        });
+    }
+
+    @Test
+    public void sharpWellExposedFramePasses() {
+        QualityPrefilter prefilter = new QualityPrefilter();
+        assertEquals(QualityPrefilter.Verdict.OK, checkPlane(prefilter, texture(128, 30)));
+        assertEquals(QualityPrefilter.Verdict.OK, checkGrey(prefilter, texture(128, 30)));
+        assertTrue(prefilter.getLastSharpness() > QualityPrefilter.DEFAULT_MIN_SHARPNESS);
+        assertEquals(0f, prefilter.getRejectionRate(), 0f);
+    }
+
+    @Test
+    public void blurredFrameIsRejected() {
+        QualityPrefilter prefilter = new QualityPrefilter();
+        assertEquals(QualityPrefilter.Verdict.BLURRED, checkPlane(prefilter, blur(texture(128, 30), 6)));
+        assertEquals(QualityPrefilter.Verdict.BLURRED, checkGrey(prefilter, blur(texture(128, 30), 6)));
+    }
+
+    @Test
+    public void exposureIsCheckedFromTheHistogram() {
+        QualityPrefilter prefilter = new QualityPrefilter();
+        assertEquals(QualityPrefilter.Verdict.UNDEREXPOSED, checkPlane(prefilter, texture(20, 15)));
+        assertEquals(QualityPrefilter.Verdict.OVEREXPOSED, checkPlane(prefilter, texture(240, 15)));
+        assertEquals(QualityPrefilter.Verdict.OK, checkPlane(prefilter, texture(128, 30)));
+        assertEquals(3, prefilter.getCheckCount());
+        assertEquals(2, prefilter.getRejectedCount());
+        assertEquals(3, prefilter.getCostStats().getCount());
+    }
+
+    @Test
+    public void thresholdsAreConfigurable() {
+        QualityPrefilter lenient = new QualityPrefilter(0f, 0, 255, 1f);
+        assertEquals(QualityPrefilter.Verdict.OK, checkPlane(lenient, blur(texture(20, 15), 6)));
+    }
+
+    @Test
+    public void noiseFinerThanAGridCellIsNotSharpness() {
+        Random random = new Random(3);
+        int[] luma = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < luma.length; i++)
+            luma[i] = 128 + random.nextInt(21) - 10;
+        QualityPrefilter prefilter = new QualityPrefilter();
+        assertEquals(QualityPrefilter.Verdict.BLURRED, checkPlane(prefilter, luma));
+    }
+
+    @Test
+    public void sharpnessDoesNotDependOnTheSourceResolution() {
+        int[] luma = texture(128, 30);
+        int[] doubled = new int[4 * luma.length];
+        for (int y = 0; y < 2 * HEIGHT; y++)
+            for (int x = 0; x < 2 * WIDTH; x++)
+                doubled[y * 2 * WIDTH + x] = luma[(y / 2) * WIDTH + x / 2];
+        QualityPrefilter prefilter = new QualityPrefilter();
+        checkPlane(prefilter, luma);
+        float sharpness = prefilter.getLastSharpness();
+        checkPlane(prefilter, doubled, 2 * WIDTH, 2 * HEIGHT);
+        assertEquals(sharpness, prefilter.getLastSharpness(), sharpness * 0.01f);
+    }
+}
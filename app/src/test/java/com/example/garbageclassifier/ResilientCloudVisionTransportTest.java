@@ -0,0 +1,220 @@
+package com.example.garbageclassifier;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+//Drives the policy layer against a local fake of the callable function whose status codes
+//and response delay are scripted per test
+public class ResilientCloudVisionTransportTest {
+
+    private static final Map<String, Object> BATCH = Collections.<String, Object>singletonMap("requests", Collections.emptyList());
+
+    private final AtomicInteger hits = new AtomicInteger();
+    //status of each successive hit, the last one repeats
+    private volatile int[] statuses = {200};
+    private volatile long delayMillis;
+    private HttpServer server;
+    private HttpCloudVisionTransport endpoint;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/batchAnnotateImages", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int hit = hits.getAndIncrement();
+                int status = statuses[Math.min(hit, statuses.length - 1)];
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                String body = status == 200
+                        ? "{\"result\":{\"responses\":[]}}"
+                        : "{\"error\":{\"status\":\"FAILED\"}}";
+                byte[] bytes = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+        });
+        server.start();
+        endpoint = new HttpCloudVisionTransport(
+                new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/batchAnnotateImages"), 5000);
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void transientErrorsAreRetriedUntilTheCallSucceeds() throws Exception {
+        statuses = new int[]{503, 500, 200};
+        ResilientCloudVisionTransport transport = new ResilientCloudVisionTransport(
+                endpoint, new RetryPolicy(3, 10, 50), new CircuitBreaker(5, 60000), 2000);
+
+        Map<String, Object> result = transport.annotate(BATCH);
+
+        assertNotNull(result.get("responses"));
+        assertEquals(3, hits.get());
+        assertEquals(2, transport.getRetries());
+        assertEquals(0, transport.getFailures());
+        assertEquals(CircuitBreaker.State.CLOSED, transport.getBreaker().getState());
+        transport.close();
+    }
+
+    @Test
+    public void clientErrorsAreNotRetried() throws Exception {
+        statuses = new int[]{400};
+        ResilientCloudVisionTransport transport = new ResilientCloudVisionTransport(
+                endpoint, new RetryPolicy(3, 10, 50), new CircuitBreaker(5, 60000), 2000);
+
+        try {
+            transport.annotate(BATCH);
+            fail("expected the 400 to surface");
+        } catch (CloudVisionException e) {
+            assertFalse(e.isTransient());
+        }
+        assertEquals(1, hits.get());
+        assertEquals(0, transport.getRetries());
+        assertEquals(0, transport.getBreaker().getConsecutiveFailures());
+        transport.close();
+    }
+
+    @Test
+    public void slowCallsShareOneDeadlineAcrossAttempts() throws Exception {
+        delayMillis = 500;
+        ResilientCloudVisionTransport transport = new ResilientCloudVisionTransport(
+                endpoint, new RetryPolicy(3, 10, 50), new CircuitBreaker(5, 60000), 150);
+
+        long start = System.nanoTime();
+        try {
+            transport.annotate(BATCH);
+            fail("expected a timeout");
+        } catch (TimeoutException e) {
+            //expected
+        }
+        //three attempts with a deadline each would have taken 450ms and more
+        assertTrue((System.nanoTime() - start) / 1000000 < 300);
+        assertEquals(1, transport.getDeadlinesExceeded());
+        assertEquals(0, transport.getRetries());
+        assertEquals(1, transport.getFailures());
+        transport.close();
+    }
+
+    @Test
+    public void retriesStopWhenTheDeadlineIsSpent() throws Exception {
+        statuses = new int[]{503};
+        delayMillis = 80;
+        ResilientCloudVisionTransport transport = new ResilientCloudVisionTransport(
+                endpoint, new RetryPolicy(10, 10, 20), new CircuitBreaker(20, 60000), 250);
+
+        long start = System.nanoTime();
+        try {
+            transport.annotate(BATCH);
+            fail("expected the 503 or the deadline to surface");
+        } catch (CloudVisionException | TimeoutException e) {
+            //expected
+        }
+        assertTrue((System.nanoTime() - start) / 1000000 < 400);
+        assertTrue(transport.getAttempts() < 10);
+        transport.close();
+    }
+
+    @Test
+    public void theBreakerOpensAfterRepeatedFailuresAndRecovers() throws Exception {
+        statuses = new int[]{503, 503, 503, 200};
+        CircuitBreaker breaker = new CircuitBreaker(3, 200);
+        ResilientCloudVisionTransport transport = new ResilientCloudVisionTransport(
+                endpoint, RetryPolicy.NONE, breaker, 2000);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                transport.annotate(BATCH);
+                fail("expected the 503 to surface");
+            } catch (CloudVisionException e) {
+                assertTrue(e.isTransient());
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.getTrips());
+
+        //refused without reaching the endpoint
+        try {
+            transport.annotate(BATCH);
+            fail("expected the open circuit to refuse");
+        } catch (CircuitOpenException e) {
+            //expected
+        }
+        assertEquals(3, hits.get());
+        assertEquals(1, breaker.getRejected());
+
+        Thread.sleep(250);
+        assertNotNull(transport.annotate(BATCH));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(4, hits.get());
+        transport.close();
+    }
+
+    @Test
+    public void anInterruptedHalfOpenTrialFreesTheBreaker() throws Exception {
+        statuses = new int[]{503, 200};
+        CircuitBreaker breaker = new CircuitBreaker(1, 50);
+        final ResilientCloudVisionTransport transport = new ResilientCloudVisionTransport(
+                endpoint, RetryPolicy.NONE, breaker, 5000);
+        try {
+            transport.annotate(BATCH);
+            fail("expected the 503 to surface");
+        } catch (CloudVisionException e) {
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        }
+        Thread.sleep(80);
+
+        //the trial call is interrupted while it waits for a slow answer
+        delayMillis = 2000;
+        final AtomicReference<Exception> trialError = new AtomicReference<>();
+        Thread trial = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    transport.annotate(BATCH);
+                } catch (Exception e) {
+                    trialError.set(e);
+                }
+            }
+        });
+        trial.start();
+        Thread.sleep(100);
+        assertTrue(breaker.isRejecting());
+        trial.interrupt();
+        trial.join(1000);
+        assertTrue(trialError.get() instanceof InterruptedException);
+
+        assertFalse(breaker.isRejecting());
+        delayMillis = 0;
+        assertNotNull(transport.annotate(BATCH));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        transport.close();
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.garbageclassifier;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResourcePoolTest {
+
+    private final List<String> closed = new CopyOnWriteArrayList<>();
+    private final ResourcePool.Closer<String> closer = new ResourcePool.Closer<String>() {
+        @Override
+        public void close(String resource) {
+            closed.add(resource);
+        }
+    };
+
+    private static void awaitWaiting(ResourcePool<?> pool, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getWaitingCount() < count) {
+            assertTrue("borrowers never queued up", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void closeFailsQueuedBorrowersAndWaitsForInFlightWork() throws Exception {
+        final ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a"));
+        final String inFlight = pool.borrow();
+        ExecutorService threads = Executors.newCachedThreadPool();
+        final AtomicInteger failed = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            threads.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        pool.giveBack(pool.borrow());
+                    } catch (IllegalStateException e) {
+                        failed.incrementAndGet();
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        awaitWaiting(pool, 3);
+
+        Future<?> closing = threads.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                pool.close(closer);
+                return null;
+            }
+        });
+        assertTrue("queued borrowers were left waiting", done.await(5, TimeUnit.SECONDS));
+        assertEquals(3, failed.get());
+        //the borrowed resource is still in use, so nothing is closed yet
+        Thread.sleep(50);
+        assertFalse(closing.isDone());
+        assertTrue(closed.isEmpty());
+
+        pool.giveBack(inFlight);
+        closing.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("a"), closed);
+        threads.shutdown();
+    }
+
+    @Test
+    public void borrowingAfterCloseFails() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a", "b"));
+        pool.close(closer);
+        assertEquals(2, closed.size());
+        try {
+            pool.borrow();
+            fail("borrowed from a closed pool");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            pool.tryBorrow();
+            fail("borrowed from a closed pool");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
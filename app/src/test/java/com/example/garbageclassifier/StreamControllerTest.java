@@ -0,0 +1,120 @@
+package com.example.garbageclassifier;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class StreamControllerTest {
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final long FRAME_NANOS = 33000000L;
+
+    private long now;
+
+    //a flat grey frame with a little noise, padded rows like a real Y plane
+    private static ByteBuffer frame(int luma, int noise) {
+        int rowStride = WIDTH + 16;
+        ByteBuffer plane = ByteBuffer.allocate(rowStride * HEIGHT);
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                plane.put(y * rowStride + x, (byte) (luma + ((x + y) % 2 == 0 ? noise : -noise)));
+        return plane;
+    }
+
+    private boolean offer(StreamController controller, ByteBuffer plane) {
+        now += FRAME_NANOS;
+        return controller.onFrame(plane, WIDTH, HEIGHT, WIDTH + 16, 1, now);
+    }
+
+    private static Classification scores(float plastic, float paper) {
+        float[] categoryScores = new float[CategoryIndex.CATEGORY_COUNT];
+        categoryScores[CategoryIndex.PLASTIC] = plastic;
+        categoryScores[CategoryIndex.PAPER] = paper;
+        return new Classification("test", Collections.<Recognition>emptyList(), categoryScores, 0);
+    }
+
+    @Test
+    public void stillSceneStopsInferringOnceLocked() {
+        StreamController controller = new StreamController(ConfidencePolicy.DEFAULT, 0.5f, 3, 6, 10f);
+        ByteBuffer scene = frame(100, 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(offer(controller, scene));
+            controller.onClassification(scores(0.9f, 0.05f));
+        }
+        assertTrue(controller.isLocked());
+        assertEquals(CategoryIndex.PLASTIC, controller.getLockedCategory());
+        for (int i = 0; i < 7; i++)
+            assertFalse(offer(controller, scene));
+        assertEquals(7, controller.getSkippedCount());
+        assertEquals(0.7f, controller.getSkipRatio(), 1e-6f);
+        //3 inferences over 9 frame intervals
+        assertEquals(2 * 1e9 / (9 * FRAME_NANOS), controller.getInferencesPerSecond(), 1e-6);
+    }
+
+    @Test
+    public void sceneChangeUnlocks() {
+        StreamController controller = new StreamController(ConfidencePolicy.DEFAULT, 0.5f, 2, 6, 10f);
+        ByteBuffer scene = frame(100, 3);
+        for (int i = 0; i < 2; i++) {
+            offer(controller, scene);
+            controller.onClassification(scores(0.9f, 0.05f));
+        }
+        assertTrue(controller.isLocked());
+        assertTrue(offer(controller, frame(160, 3)));
+        assertFalse(controller.isLocked());
+        assertEquals(1, controller.getSceneChangeCount());
+    }
+
+    @Test
+    public void sceneChangeStartsTheAverageOver() {
+        StreamController controller = new StreamController(ConfidencePolicy.DEFAULT, 0.4f, 3, 6, 10f);
+        offer(controller, frame(100, 3));
+        controller.onClassification(scores(0.9f, 0.05f));
+        offer(controller, frame(100, 3));
+        controller.onClassification(scores(0.9f, 0.05f));
+
+        assertTrue(offer(controller, frame(160, 3)));
+        Classification result = controller.onClassification(scores(0.05f, 0.9f));
+        assertEquals(CategoryIndex.PAPER, result.getTopCategory());
+        assertEquals(0.05f, result.getCategoryScore(CategoryIndex.PLASTIC), 1e-6f);
+        assertEquals(0.9f, result.getCategoryScore(CategoryIndex.PAPER), 1e-6f);
+    }
+
+    @Test
+    public void unsureStillSceneIsRetriedAFewTimes() {
+        StreamController controller = new StreamController(ConfidencePolicy.DEFAULT, 0.5f, 3, 4, 10f);
+        ByteBuffer scene = frame(100, 3);
+        int inferred = 0;
+        for (int i = 0; i < 10; i++) {
+            if (offer(controller, scene)) {
+                inferred++;
+                controller.onClassification(scores(0.4f, 0.35f));
+            }
+        }
+        assertEquals(4, inferred);
+        assertFalse(controller.isLocked());
+    }
+
+    @Test
+    public void movingAverageDampsASingleOutlier() {
+        StreamController controller = new StreamController(ConfidencePolicy.DEFAULT, 0.4f, 3, 6, 10f);
+        controller.onClassification(scores(0.9f, 0.1f));
+        controller.onClassification(scores(0.9f, 0.1f));
+        Classification smoothed = controller.onClassification(scores(0.1f, 0.9f));
+        assertEquals(CategoryIndex.PLASTIC, smoothed.getTopCategory());
+        assertEquals(0.4f * 0.1f + 0.6f * 0.9f, smoothed.getCategoryScore(CategoryIndex.PLASTIC), 1e-6f);
+    }
+
+    @Test
+    public void noiseIsNotAChange() {
+        LumaThumbnail a = new LumaThumbnail(8, 6).sample(frame(100, 4), WIDTH, HEIGHT, WIDTH + 16, 1);
+        LumaThumbnail b = new LumaThumbnail(8, 6).sample(frame(102, 0), WIDTH, HEIGHT, WIDTH + 16, 1);
+        assertTrue(a.difference(b) < StreamController.DEFAULT_CHANGE_THRESHOLD);
+        LumaThumbnail c = new LumaThumbnail(8, 6).sample(frame(140, 0), WIDTH, HEIGHT, WIDTH + 16, 1);
+        assertTrue(a.difference(c) > StreamController.DEFAULT_CHANGE_THRESHOLD);
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.garbageclassifier;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class YuvRowSourceTest {
+
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 6;
+
+    private final Random random = new Random(42);
+    private final byte[] luma = new byte[WIDTH * HEIGHT];
+    private final byte[] u = new byte[(WIDTH / 2) * (HEIGHT / 2)];
+    private final byte[] v = new byte[(WIDTH / 2) * (HEIGHT / 2)];
+
+    public YuvRowSourceTest() {
+        random.nextBytes(luma);
+        random.nextBytes(u);
+        random.nextBytes(v);
+    }
+
+    //planar layout with padding at the end of every row
+    private YuvRowSource i420(YuvRowSource source) {
+        int yRowStride = WIDTH + 6;
+        int uvRowStride = WIDTH / 2 + 3;
+        ByteBuffer yPlane = ByteBuffer.allocate(yRowStride * HEIGHT);
+        ByteBuffer uPlane = ByteBuffer.allocate(uvRowStride * HEIGHT / 2);
+        ByteBuffer vPlane = ByteBuffer.allocate(uvRowStride * HEIGHT / 2);
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                yPlane.put(y * yRowStride + x, luma[y * WIDTH + x]);
+        for (int y = 0; y < HEIGHT / 2; y++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                uPlane.put(y * uvRowStride + x, u[y * WIDTH / 2 + x]);
+                vPlane.put(y * uvRowStride + x, v[y * WIDTH / 2 + x]);
+            }
+        }
+        return source.setPlanes(WIDTH, HEIGHT, yPlane, yRowStride, 1, uPlane, vPlane, uvRowStride, 1);
+    }
+
+    //semi-planar NV21, V and U interleaved in one buffer, as most camera HALs deliver it
+    private YuvRowSource nv21(YuvRowSource source) {
+        int rowStride = WIDTH + 4;
+        ByteBuffer yPlane = ByteBuffer.allocate(rowStride * HEIGHT);
+        byte[] chroma = new byte[rowStride * HEIGHT / 2];
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                yPlane.put(y * rowStride + x, luma[y * WIDTH + x]);
+        for (int y = 0; y < HEIGHT / 2; y++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                chroma[y * rowStride + 2 * x] = v[y * WIDTH / 2 + x];
+                chroma[y * rowStride + 2 * x + 1] = u[y * WIDTH / 2 + x];
+            }
+        }
+        ByteBuffer vPlane = ByteBuffer.wrap(chroma);
+        ByteBuffer uPlane = ByteBuffer.wrap(chroma, 1, chroma.length - 1).slice();
+        return source.setPlanes(WIDTH, HEIGHT, yPlane, rowStride, 1, uPlane, vPlane, rowStride, 2);
+    }
+
+    //straightforward full frame conversion with the same fixed point coefficients
+    private int expected(int x, int y) {
+        int l = luma[y * WIDTH + x] & 0xFF;
+        int cu = (u[(y / 2) * WIDTH / 2 + x / 2] & 0xFF) - 128;
+        int cv = (v[(y / 2) * WIDTH / 2 + x / 2] & 0xFF) - 128;
+        int r = clamp(l + ((1436 * cv) >> 10));
+        int g = clamp(l - ((352 * cu + 731 * cv) >> 10));
+        int b = clamp(l + ((1815 * cu) >> 10));
+        return 0xFF000000 | r << 16 | g << 8 | b;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private void assertMatchesReference(YuvRowSource source) {
+        assertEquals(WIDTH, source.getWidth());
+        assertEquals(HEIGHT, source.getHeight());
+        int[] row = new int[WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            //odd start columns split a chroma pair
+            for (int x = 0; x < WIDTH; x++) {
+                source.getRow(row, x, y, WIDTH - x);
+                for (int i = 0; i < WIDTH - x; i++)
+                    assertEquals("pixel " + (x + i) + "," + y, expected(x + i, y), row[i]);
+            }
+        }
+    }
+
+    @Test
+    public void planarRowsHonorStrides() {
+        assertMatchesReference(i420(new YuvRowSource()));
+    }
+
+    @Test
+    public void semiPlanarRowsHonorPixelStride() {
+        assertMatchesReference(nv21(new YuvRowSource()));
+    }
+
+    @Test
+    public void neutralChromaIsGrey() {
+        ByteBuffer yPlane = ByteBuffer.wrap(new byte[]{0, 64, (byte) 128, (byte) 255});
+        ByteBuffer chroma = ByteBuffer.wrap(new byte[]{(byte) 128, (byte) 128});
+        YuvRowSource source = new YuvRowSource().setPlanes(4, 1, yPlane, 4, 1, chroma, chroma, 2, 1);
+        int[] row = new int[4];
+        source.getRow(row, 0, 0, 4);
+        assertArrayEquals(new int[]{0xFF000000, 0xFF404040, 0xFF808080, 0xFFFFFFFF}, row);
+    }
+
+    //the preprocessor reading the planes gives the same input as reading a converted frame
+    @Test
+    public void fusedPreprocessingMatchesConvertedFrame() {
+        final int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++)
+            for (int x = 0; x < WIDTH; x++)
+                pixels[y * WIDTH + x] = expected(x, y);
+        PixelRowSource converted = new PixelRowSource() {
+            @Override
+            public int getWidth() {
+                return WIDTH;
+            }
+
+            @Override
+            public int getHeight() {
+                return HEIGHT;
+            }
+
+            @Override
+            public void getRow(int[] dst, int x, int y, int width) {
+                System.arraycopy(pixels, y * WIDTH + x, dst, 0, width);
+            }
+        };
+        YuvRowSource source = nv21(new YuvRowSource());
+        for (FusedPreprocessor.Sampling sampling : FusedPreprocessor.Sampling.values()) {
+            for (int rotations = 0; rotations < 4; rotations++) {
+                FusedPreprocessor fromPlanes = new FusedPreprocessor(4, 3, sampling);
+                FusedPreprocessor fromFrame = new FusedPreprocessor(4, 3, sampling);
+                ByteBuffer actual = fromPlanes.process(source, rotations);
+                ByteBuffer expected = fromFrame.process(converted, rotations);
+                assertEquals(sampling + " rotations " + rotations, expected, actual);
+            }
+        }
+    }
+}